@@ -0,0 +1,163 @@
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of putting a refreshed 10k-entry listing into the list.
+ * <br>
+ * A ListView re-binds its visible rows on every change notification,
+ * {@link VisibleRows} models that without a device:
+ * <ul>
+ *   <li>perItemAdd - ArrayAdapter.clear() and add() per entry, with notifyOnChange on, 
+ *   every visible row re-bound on every add,</li>
+ *   <li>singleSwap - the whole listing at once, every visible row re-bound,</li>
+ *   <li>diffedSwap - listing diffed with {@link DirectoryListing#reuse(List, List)}, 
+ *   unchanged rows are not re-bound,</li>
+ *   <li>diff - the diff itself, which runs on the loader thread.</li>
+ * </ul>
+ * Row binding here is much cheaper than on a device, so compare the number
+ * of notifications and re-bound rows, rather than absolute times.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdapterUpdateBenchmark {
+
+  @Param({ "10000" })
+  int entries;
+
+  /**
+   * how many entries change between the listings, in percents
+   */
+  @Param({ "1" })
+  int changedPercent;
+
+  private List<FileItem> shown;
+  private List<FileItem> refreshed;
+  private List<FileItem> diffed;
+  private VisibleRows rows;
+
+  @Setup(Level.Trial)
+  public void createListings() {
+    File folder = new File("/sdcard/DCIM/Camera");
+    String path = folder.getPath();
+    List<FileItem> old = new ArrayList<FileItem>(entries);
+    List<FileItem> fresh = new ArrayList<FileItem>(entries);
+    int changeEvery = changedPercent > 0 ? 100 / changedPercent : Integer.MAX_VALUE;
+    SortKeys keys = new SortKeys(false);
+    for (int i = 0; i < entries; i++) {
+      String name = String.format("IMG_%08d.jpg", i);
+      old.add(new FileItem(name, FileType.File, path, 1000 + i, 1500000000000L, keys.key(name)));
+      // same entries, new instances, every changeEvery-th got modified
+      long size = i % changeEvery == 0 ? 2000 + i : 1000 + i;
+      fresh.add(new FileItem(name, FileType.File, path, size, 1500000000000L, keys.key(name)));
+    }
+    Collections.sort(old, DirectoryListing.sorter);
+    Collections.sort(fresh, DirectoryListing.sorter);
+    shown = DirectoryListing.withUpItem(folder, old);
+    refreshed = DirectoryListing.withUpItem(folder, fresh);
+    diffed = DirectoryListing.reuse(shown, refreshed);
+  }
+
+  @Setup(Level.Invocation)
+  public void showOldListing() {
+    rows = new VisibleRows(shown);
+  }
+
+  /**
+   * Old adapter: ArrayAdapter binds every visible row on every notification.
+   */
+  private void notifyArrayAdapter(List<FileItem> items, Blackhole bh) {
+    rows.forget();
+    rows.setItems(items, bh);
+  }
+
+  @Benchmark
+  public void perItemAdd(Blackhole bh) {
+    List<FileItem> items = new ArrayList<FileItem>();
+    notifyArrayAdapter(items, bh);
+    for (FileItem item : refreshed) {
+      items.add(item);
+      notifyArrayAdapter(items, bh);
+    }
+  }
+
+  @Benchmark
+  public void singleSwap(Blackhole bh) {
+    rows.setItems(refreshed, bh);
+  }
+
+  /**
+   * UI thread part of the diffed update, the diff itself is done by the loader thread.
+   */
+  @Benchmark
+  public void diffedSwap(Blackhole bh) {
+    rows.setItems(diffed, bh);
+  }
+
+  /**
+   * Loader thread part of the diffed update.
+   */
+  @Benchmark
+  public List<FileItem> diff() {
+    return DirectoryListing.reuse(shown, refreshed);
+  }
+
+  /**
+   * Visible part of a ListView: a screen of rows, re-bound on every notification,
+   * unless the row still shows the same item instance.
+   */
+  static class VisibleRows {
+    private static final int SCREEN = 12;
+    private final FileItem[] bound = new FileItem[SCREEN];
+
+    VisibleRows(List<FileItem> items) {
+      for (int i = 0; i < SCREEN && i < items.size(); i++) {
+        bound[i] = items.get(i);
+      }
+    }
+
+    void forget() {
+      for (int i = 0; i < SCREEN; i++) {
+        bound[i] = null;
+      }
+    }
+
+    void setItems(List<FileItem> items, Blackhole bh) {
+      for (int i = 0; i < SCREEN; i++) {
+        FileItem item = i < items.size() ? items.get(i) : null;
+        if (item != bound[i]) {
+          bound[i] = item;
+          if (item != null) {
+            bh.consume(item.getName().length() + item.getParent().length());
+            bh.consume(item.getType().getColor());
+          }
+        }
+      }
+    }
+  }
+}
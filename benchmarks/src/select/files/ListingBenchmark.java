@@ -0,0 +1,106 @@
+package select.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Listing a flat folder from the disk: names, stat of every entry, 
+ * filtering and sorting, i.e. everything the loader thread does.
+ * <br>
+ * Run with <code>-prof gc</code>, and divide <code>gc.alloc.rate.norm</code>
+ * by the number of entries to get allocations per entry.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+  @Param({ "100", "1000", "10000", "100000" })
+  int entries;
+
+  @Param({ "true", "false" })
+  boolean mixedCase;
+
+  @Param({ "" + SelectMode.SELECT_FILE, "" + SelectMode.SELECT_FOLDER })
+  int mode;
+
+  private File folder;
+  private SelectMode selectMode;
+  private String[] names;
+  private ExecutorService pool;
+
+  @Setup(Level.Trial)
+  public void createFolder() throws IOException {
+    folder = SyntheticTree.flat(entries, mixedCase);
+    selectMode = SelectMode.createSelectMode(mode, null);
+    names = DirectoryListing.names(folder);
+    pool = Executors.newFixedThreadPool(CORES);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFolder() {
+    pool.shutdown();
+    SyntheticTree.delete(folder);
+  }
+
+  /**
+   * The whole listing.
+   */
+  @Benchmark
+  public List<FileItem> list() {
+    return DirectoryListing.list(folder, selectMode, new SortKeys(false));
+  }
+
+  /**
+   * Stat, filtering and sorting, split between all cores.
+   */
+  @Benchmark
+  public List<FileItem> parallel() {
+    return DirectoryListing.sortedEntries(folder, names, 0, names.length, selectMode, false, pool, CORES);
+  }
+
+  /**
+   * Reading the names only.
+   */
+  @Benchmark
+  public String[] names() {
+    return DirectoryListing.names(folder);
+  }
+
+  /**
+   * Stat of every entry, sort keys and filtering, without sorting.
+   */
+  @Benchmark
+  public List<FileItem> entries() {
+    List<FileItem> result = new ArrayList<FileItem>(names.length);
+    DirectoryListing.entries(folder, names, 0, names.length, selectMode, new SortKeys(false), result);
+    return result;
+  }
+}
@@ -0,0 +1,73 @@
+package select.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Going "Up.." from the bottom of a deeply nested tree to its top, 
+ * listing every folder on the way.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+
+  @Param({ "32" })
+  int depth;
+
+  @Param({ "50" })
+  int filesPerLevel;
+
+  private File bottom;
+  private File top;
+  private SelectMode selectMode;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    bottom = SyntheticTree.deep(depth, filesPerLevel);
+    top = bottom;
+    for (int i = 0; i < depth; i++) {
+      top = top.getParentFile();
+    }
+    selectMode = SelectMode.createSelectMode(SelectMode.SELECT_FILE, null);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() {
+    SyntheticTree.delete(top);
+  }
+
+  @Benchmark
+  public void upToTheTop(Blackhole bh) {
+    File folder = bottom;
+    for (int i = 0; i <= depth; i++) {
+      List<FileItem> items = DirectoryListing.list(folder, selectMode, new SortKeys(false));
+      bh.consume(items);
+      // "Up.." item
+      folder = items.get(0).getFile();
+    }
+  }
+}
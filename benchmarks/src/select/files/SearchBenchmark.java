@@ -0,0 +1,73 @@
+package select.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Type-ahead search over a listing: {@link ListingIndex} against a scan of every name.
+ * Both match the query anywhere in the name.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchBenchmark {
+
+  @Param({ "50000" })
+  int entries;
+
+  @Param({ "im", "0042", "document 7" })
+  String query;
+
+  private List<FileItem> listing;
+  private ListingIndex index;
+
+  @Setup(Level.Trial)
+  public void createListing() {
+    String folder = "/sdcard/Download";
+    SortKeys keys = new SortKeys(false);
+    listing = new ArrayList<FileItem>(entries);
+    for (int i = 0; i < entries; i++) {
+      String name = (i % 2 == 0 ? "IMG_" : "Document ") + i + (i % 3 == 0 ? ".jpg" : ".pdf");
+      listing.add(new FileItem(name, FileType.File, folder, i, 0, keys.key(name)));
+    }
+    Collections.sort(listing, DirectoryListing.sorter);
+    index = ListingIndex.build(listing);
+  }
+
+  @Benchmark
+  public ListingIndex build() {
+    return ListingIndex.build(listing);
+  }
+
+  @Benchmark
+  public List<FileItem> indexed() {
+    return index.query(query);
+  }
+
+  @Benchmark
+  public List<FileItem> scan() {
+    // same matching, as the index: anywhere in the name
+    return ListingIndex.scan(listing, query);
+  }
+}
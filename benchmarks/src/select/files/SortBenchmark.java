@@ -0,0 +1,101 @@
+package select.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * In-memory part of the listing: sort keys, {@link SelectMode} filters and the sorter,
+ * on items, which were already read from the disk.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+  @Param({ "100", "1000", "10000", "100000" })
+  int entries;
+
+  @Param({ "true", "false" })
+  boolean mixedCase;
+
+  @Param({ "false", "true" })
+  boolean natural;
+
+  private String[] names;
+  private List<FileItem> unsorted;
+  private SelectMode openFile;
+  private SelectMode openFolder;
+
+  @Setup(Level.Trial)
+  public void readFolder() throws IOException {
+    File folder = SyntheticTree.flat(entries, mixedCase);
+    try {
+      SortKeys keys = new SortKeys(natural);
+      names = DirectoryListing.names(folder);
+      unsorted = new ArrayList<FileItem>(names.length);
+      for (String name : names) {
+        unsorted.add(FileItem.stat(folder, name, keys));
+      }
+    } finally {
+      SyntheticTree.delete(folder);
+    }
+    openFile = SelectMode.createSelectMode(SelectMode.SELECT_FILE, null);
+    openFolder = SelectMode.createSelectMode(SelectMode.SELECT_FOLDER, null);
+  }
+
+  @Benchmark
+  public List<FileItem> sort() {
+    List<FileItem> items = new ArrayList<FileItem>(unsorted);
+    Collections.sort(items, DirectoryListing.sorter);
+    return items;
+  }
+
+  /**
+   * Sort keys are computed once per entry, this is their cost.
+   */
+  @Benchmark
+  public void sortKeys(Blackhole bh) {
+    SortKeys keys = new SortKeys(natural);
+    for (String name : names) {
+      bh.consume(keys.key(name));
+    }
+  }
+
+  @Benchmark
+  public void filterFiles(Blackhole bh) {
+    for (FileItem item : unsorted) {
+      bh.consume(openFile.accept(item));
+    }
+  }
+
+  @Benchmark
+  public void filterFolders(Blackhole bh) {
+    for (FileItem item : unsorted) {
+      bh.consume(openFolder.accept(item));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package select.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Creates folder trees for the benchmarks in the temp folder.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class SyntheticTree {
+
+  /**
+   * every n-th entry of a flat folder is a folder
+   */
+  private static final int FOLDER_EVERY = 10;
+
+  private SyntheticTree() {
+  }
+
+  /**
+   * Creates a folder with files and folders, names are unique and shuffled.
+   * @param entries number of children.
+   * @param mixedCase <code>true</code> for names like "IMG_0042.jpg" and "img_0043.JPG",
+   * <code>false</code> for lowercase only.
+   * @return the folder.
+   */
+  static File flat(int entries, boolean mixedCase) throws IOException {
+    File root = createTempFolder("flat");
+    Random random = new Random(entries);
+    for (int i = 0; i < entries; i++) {
+      String name = name(random, i, mixedCase);
+      File f = new File(root, name);
+      boolean ok = i % FOLDER_EVERY == 0 ? f.mkdir() : f.createNewFile();
+      if (!ok) {
+        throw new IOException("can't create " + f);
+      }
+    }
+    return root;
+  }
+
+  /**
+   * Creates a chain of nested folders, every level has a few files.
+   * @param depth number of levels.
+   * @param filesPerLevel files on every level.
+   * @return the deepest folder.
+   */
+  static File deep(int depth, int filesPerLevel) throws IOException {
+    File folder = createTempFolder("deep");
+    Random random = new Random(depth);
+    for (int level = 0; level < depth; level++) {
+      for (int i = 0; i < filesPerLevel; i++) {
+        File f = new File(folder, name(random, i, true));
+        if (!f.createNewFile()) {
+          throw new IOException("can't create " + f);
+        }
+      }
+      folder = new File(folder, "level" + level);
+      if (!folder.mkdir()) {
+        throw new IOException("can't create " + folder);
+      }
+    }
+    return folder;
+  }
+
+  private static String name(Random random, int i, boolean mixedCase) {
+    String prefix = random.nextBoolean() ? "IMG_" : "Document ";
+    String extension = random.nextBoolean() ? ".jpg" : ".pdf";
+    String name = prefix + (random.nextInt(1000000) * 1000 + i % 1000) + "-" + i + extension;
+    if (!mixedCase) {
+      return name.toLowerCase();
+    }
+    return random.nextBoolean() ? name : name.toUpperCase();
+  }
+
+  private static File createTempFolder(String prefix) throws IOException {
+    File root = File.createTempFile("selectfile-" + prefix, "");
+    if (!root.delete() || !root.mkdir()) {
+      throw new IOException("can't create " + root);
+    }
+    return root;
+  }
+
+  /**
+   * Deletes the whole tree, starting from the given folder.
+   */
+  static void delete(File f) {
+    File[] children = f.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    f.delete();
+  }
+}
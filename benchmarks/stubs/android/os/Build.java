@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class: reports API 25, so the library 
+ * takes the android.system.Os path, which the stubs implement.
+ */
+public class Build {
+
+  public static class VERSION {
+    public static final int SDK_INT = 25;
+  }
+}
@@ -0,0 +1,13 @@
+package android.system;
+
+/**
+ * Stand-in for the Android class.
+ */
+public final class ErrnoException extends Exception {
+  public final int errno;
+
+  public ErrnoException(String functionName, int errno) {
+    super(functionName + " failed: " + errno);
+    this.errno = errno;
+  }
+}
@@ -0,0 +1,39 @@
+package android.system;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Stand-in for the Android class: stat() and lstat() through BasicFileAttributes,
+ * which is a single syscall on Linux, like on a device.
+ */
+public final class Os {
+
+  private Os() {
+  }
+
+  public static StructStat stat(String path) throws ErrnoException {
+    return stat("stat", path);
+  }
+
+  public static StructStat lstat(String path) throws ErrnoException {
+    return stat("lstat", path, LinkOption.NOFOLLOW_LINKS);
+  }
+
+  private static StructStat stat(String call, String path, LinkOption... options) throws ErrnoException {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class, options);
+      int mode = attributes.isSymbolicLink() ? OsConstants.S_IFLNK
+          : attributes.isDirectory() ? OsConstants.S_IFDIR : OsConstants.S_IFREG;
+      return new StructStat(mode, attributes.size(), attributes.lastModifiedTime().toMillis() / 1000);
+    } catch (NoSuchFileException e) {
+      throw new ErrnoException(call, OsConstants.ENOENT);
+    } catch (IOException e) {
+      throw new ErrnoException(call, OsConstants.EIO);
+    }
+  }
+}
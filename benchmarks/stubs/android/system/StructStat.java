@@ -0,0 +1,16 @@
+package android.system;
+
+/**
+ * Stand-in for the Android class, only the fields the library reads.
+ */
+public final class StructStat {
+  public final int st_mode;
+  public final long st_size;
+  public final long st_mtime;
+
+  public StructStat(int st_mode, long st_size, long st_mtime) {
+    this.st_mode = st_mode;
+    this.st_size = st_size;
+    this.st_mtime = st_mtime;
+  }
+}
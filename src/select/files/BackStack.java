@@ -0,0 +1,109 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folders, which the user came from, with their listings and scroll positions,
+ * so going back shows them at once, without touching the disk.
+ * <br>
+ * Bounded by the number of kept rows: the oldest entries are dropped first.
+ * Restored listings may be stale, they are revalidated by the {@link DirectoryLoader}.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class BackStack {
+
+  /**
+   * rows kept by all entries together
+   */
+  private static final int MAX_ROWS = 50000;
+  private static final int MAX_ENTRIES = 32;
+
+  /**
+   * Folder, as it was left.
+   */
+  static final class Entry {
+    final String path;
+    final List<FileItem> items;
+    // first visible row, and its offset from the top of the list
+    final int position;
+    final int top;
+
+    Entry(String path, List<FileItem> items, int position, int top) {
+      this.path = path;
+      this.items = items;
+      this.position = position;
+      this.top = top;
+    }
+  }
+
+  private final List<Entry> entries = new ArrayList<Entry>();
+  private int rows = 0;
+
+  /**
+   * Remembers the folder, which is being left. Listings, which are too large 
+   * to keep, are not remembered: they are listed again on the way back.
+   */
+  void push(File folder, List<FileItem> items, int position, int top) {
+    if (items.size() > MAX_ROWS) {
+      return;
+    }
+    entries.add(new Entry(folder.getAbsolutePath(), items, position, top));
+    rows += items.size();
+    while (rows > MAX_ROWS || entries.size() > MAX_ENTRIES) {
+      rows -= entries.remove(0).items.size();
+    }
+  }
+
+  /**
+   * @return entry of the folder, if it is the latest one, <code>null</code> otherwise.
+   */
+  Entry popIf(File folder) {
+    if (entries.isEmpty()) {
+      return null;
+    }
+    Entry last = entries.get(entries.size() - 1);
+    if (!last.path.equals(folder.getAbsolutePath())) {
+      return null;
+    }
+    entries.remove(entries.size() - 1);
+    rows -= last.items.size();
+    return last;
+  }
+
+  /**
+   * @return path of the latest folder, or <code>null</code> if there is none.
+   */
+  String peekPath() {
+    return entries.isEmpty() ? null : entries.get(entries.size() - 1).path;
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Paths of the checked files, in the multi-selection mode.
+ * <br>
+ * Kept as one sorted array of paths: no entry objects, and lookups 
+ * by binary search, so checking every bound row is cheap.
+ * Checked files stay checked, while the user goes through the folders.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class CheckedSet {
+
+  private String[] paths = new String[8];
+  private int size = 0;
+
+  boolean contains(String path) {
+    return Arrays.binarySearch(paths, 0, size, path) >= 0;
+  }
+
+  /**
+   * Same as {@link #contains(String)} for <code>new File(parent, name)</code>,
+   * but doesn't build the path: rows check it on every bind.
+   * @param parent absolute path of the folder.
+   */
+  boolean contains(String parent, String name) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(paths[mid], parent, name);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Compares the path with the path of the child, like {@link String#compareTo(String)} does.
+   */
+  private static int compare(String path, String parent, String name) {
+    // "/" has the separator already
+    boolean separator = !parent.endsWith(File.separator);
+    int parentLength = parent.length();
+    int childLength = parentLength + (separator ? 1 : 0) + name.length();
+    int length = Math.min(path.length(), childLength);
+    for (int i = 0; i < length; i++) {
+      char c;
+      if (i < parentLength) {
+        c = parent.charAt(i);
+      } else if (separator && i == parentLength) {
+        c = File.separatorChar;
+      } else {
+        c = name.charAt(i - parentLength - (separator ? 1 : 0));
+      }
+      char p = path.charAt(i);
+      if (p != c) {
+        return p - c;
+      }
+    }
+    return path.length() - childLength;
+  }
+
+  /**
+   * Checks the path, or unchecks it, if it is checked.
+   * @return <code>true</code>, if the path is checked now.
+   */
+  boolean toggle(String path) {
+    int i = Arrays.binarySearch(paths, 0, size, path);
+    if (i >= 0) {
+      System.arraycopy(paths, i + 1, paths, i, size - i - 1);
+      paths[--size] = null;
+      return false;
+    }
+    int at = -i - 1;
+    if (size == paths.length) {
+      paths = Arrays.copyOf(paths, size * 2);
+    }
+    System.arraycopy(paths, at, paths, at + 1, size - at);
+    paths[at] = path;
+    size++;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return checked paths, sorted, e.g. to save them.
+   */
+  String[] toPaths() {
+    return Arrays.copyOf(paths, size);
+  }
+
+  /**
+   * Replaces the checked paths, e.g. with the saved ones.
+   * @param sorted paths, as {@link #toPaths()} returned them.
+   */
+  void setPaths(String[] sorted) {
+    paths = Arrays.copyOf(sorted, Math.max(8, sorted.length));
+    size = sorted.length;
+  }
+
+  /**
+   * @return checked files, sorted by path.
+   */
+  File[] toFiles() {
+    File[] files = new File[size];
+    for (int i = 0; i < size; i++) {
+      files[i] = new File(paths[i]);
+    }
+    return files;
+  }
+}
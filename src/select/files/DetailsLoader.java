@@ -0,0 +1,170 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.Formatter;
+
+/**
+ * Formats the details line of the rows, which are shown: size or child count, 
+ * and date, on a background thread. Children of folders are counted there, too.
+ * <br>
+ * Requests are collected for a short time and handled in batches, 
+ * so a fling doesn't start a task per row. Rows, which are recycled
+ * before they are handled, take the request back.
+ * Counts and details are kept in the {@link FileItem}, so every item is handled once.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class DetailsLoader {
+
+  /**
+   * Receives items with their details on the UI thread.
+   */
+  interface Listener {
+    void onDetailsLoaded(List<FileItem> items);
+  }
+
+  /**
+   * collect requests for this long
+   */
+  private static final long BATCH_DELAY_MS = 50;
+  private static final int MAX_BATCH = 32;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-count"));
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Context context;
+  private final Listener listener;
+  // used on the background thread only
+  private DateFormat dateFormat = null;
+  private final Date date = new Date();
+  // insertion-ordered: the rows, which were bound first, are counted first
+  private final LinkedHashSet<FileItem> queue = new LinkedHashSet<FileItem>();
+  private boolean scheduled = false;
+  private int generation = 0;
+
+  DetailsLoader(Context context, Listener listener) {
+    this.context = context;
+    this.listener = listener;
+  }
+
+  /**
+   * Formats details of the item, unless they are formatted already.
+   */
+  void request(FileItem item) {
+    if (item.getDetails() != null || !queue.add(item)) {
+      return;
+    }
+    if (!scheduled) {
+      scheduled = true;
+      handler.postDelayed(flush, BATCH_DELAY_MS);
+    }
+  }
+
+  /**
+   * Takes the request back, if it wasn't sent to the background thread yet.
+   */
+  void forget(FileItem item) {
+    queue.remove(item);
+  }
+
+  /**
+   * Drops all requests. Results of the running batch are not delivered.
+   */
+  void cancel() {
+    generation++;
+    queue.clear();
+    scheduled = false;
+    handler.removeCallbacks(flush);
+  }
+
+  private final Runnable flush = new Runnable() {
+    public void run() {
+      scheduled = false;
+      final List<FileItem> batch = new ArrayList<FileItem>(Math.min(queue.size(), MAX_BATCH));
+      Iterator<FileItem> it = queue.iterator();
+      while (it.hasNext() && batch.size() < MAX_BATCH) {
+        batch.add(it.next());
+        it.remove();
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+      if (!queue.isEmpty()) {
+        scheduled = true;
+        handler.postDelayed(flush, BATCH_DELAY_MS);
+      }
+      final int token = generation;
+      executor.execute(new Runnable() {
+        public void run() {
+          for (FileItem item : batch) {
+            if (item.isDirectory() && item.getChildCount() == FileItem.UNKNOWN) {
+              item.setChildCount(DirectoryListing.names(item.getFile()).length);
+            }
+            item.setDetails(format(item));
+          }
+          handler.post(new Runnable() {
+            public void run() {
+              if (token == generation) {
+                listener.onDetailsLoaded(batch);
+              }
+            }
+          });
+        }
+      });
+    }
+  };
+
+  /**
+   * Runs on the background thread.
+   */
+  private String format(FileItem item) {
+    if (dateFormat == null) {
+      dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
+    }
+    String amount = item.isDirectory() 
+        ? item.getChildCount() + " " + SelectConstants.fs_items
+        : Formatter.formatShortFileSize(context, item.getSize());
+    date.setTime(item.getLastModified());
+    return amount + "  " + dateFormat.format(date);
+  }
+}
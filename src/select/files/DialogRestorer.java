@@ -0,0 +1,149 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import processing.core.PApplet;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+
+/**
+ * Shows the {@link SelectDialog} again, when the sketch activity is recreated, e.g. on rotation.
+ * <br>
+ * The dialog isn't managed by the activity, so nobody saves it. Its state is saved 
+ * here together with the activity state, the dialog is dismissed with the old activity,
+ * so its window doesn't leak, and the {@link SelectLibrary} of the recreated sketch 
+ * shows it again, bound to the new sketch. Callback objects are carried over as they are.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class DialogRestorer implements Application.ActivityLifecycleCallbacks {
+
+  private static DialogRestorer instance = null;
+
+  // shown dialog and its activity
+  private SelectDialog dialog = null;
+  private Activity activity = null;
+  // dialog, which waits for the recreated activity
+  private SelectDialog.Selection saved = null;
+  private Class<?> savedActivity = null;
+  private Bundle savedState = null;
+
+  private DialogRestorer() {
+  }
+
+  /**
+   * Starts saving the shown dialog with the activity.
+   */
+  static void track(Activity activity, SelectDialog dialog) {
+    if (instance == null) {
+      instance = new DialogRestorer();
+      activity.getApplication().registerActivityLifecycleCallbacks(instance);
+    }
+    instance.activity = activity;
+    instance.dialog = dialog;
+  }
+
+  /**
+   * Shows the dialog, which was showing, when the activity of the sketch was recreated.
+   * @param parent the recreated sketch.
+   */
+  static void restore(PApplet parent) {
+    Activity activity = parent.getActivity();
+    if (instance == null || instance.saved == null || activity == null
+        || instance.savedActivity != activity.getClass()) {
+      return;
+    }
+    SelectDialog dlg = instance.saved.create(parent);
+    Bundle state = instance.savedState;
+    instance.forget();
+    dlg.setOwnerActivity(activity);
+    track(activity, dlg);
+    // creates the dialog from the state, and shows it
+    dlg.onRestoreInstanceState(state);
+  }
+
+  private void forget() {
+    saved = null;
+    savedActivity = null;
+    savedState = null;
+  }
+
+  @Override
+  public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    if (activity == this.activity && dialog.isShowing()) {
+      saved = dialog.getSelection();
+      savedActivity = activity.getClass();
+      savedState = dialog.onSaveInstanceState();
+    }
+  }
+
+  @Override
+  public void onActivityDestroyed(Activity activity) {
+    if (activity == this.activity) {
+      SelectDialog shown = dialog;
+      this.activity = null;
+      dialog = null;
+      if (!activity.isChangingConfigurations()) {
+        forget();
+      }
+      if (shown.isShowing()) {
+        shown.dismiss();
+      }
+    } else if (!activity.isChangingConfigurations() && activity.getClass() == savedActivity) {
+      // the recreated sketch never asked for it
+      forget();
+      SelectDialog.dropRetained();
+    }
+  }
+
+  @Override
+  public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+  }
+
+  @Override
+  public void onActivityStarted(Activity activity) {
+  }
+
+  @Override
+  public void onActivityResumed(Activity activity) {
+    if (activity == this.activity) {
+      // saved, but not recreated: e.g. it was in the background
+      forget();
+    }
+  }
+
+  @Override
+  public void onActivityPaused(Activity activity) {
+  }
+
+  @Override
+  public void onActivityStopped(Activity activity) {
+  }
+}
@@ -0,0 +1,343 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads, filters and sorts the contents of a folder.
+ * Has no Android dependencies, so it can be called from any thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class DirectoryListing {
+
+  private DirectoryListing() {
+  }
+
+  /**
+   * 1. directories first
+   * 2. dirs/files are sorted by their precomputed {@link SortKeys}
+   * 3. names, which only differ in case, keep a stable order
+   */
+  static final Comparator<FileItem> sorter = new Comparator<FileItem>() {
+    @Override
+    public int compare(FileItem lhs, FileItem rhs) {
+      // file or folder
+      int lhsType = lhs.isDirectory() ? 0 : 1;
+      int rhsType = rhs.isDirectory() ? 0 : 1;
+      if (lhsType != rhsType) {
+        return lhsType - rhsType;
+      }
+      int byKey = lhs.getSortKey().compareTo(rhs.getSortKey());
+      if (byKey != 0) {
+        return byKey;
+      }
+      return lhs.getName().compareTo(rhs.getName());
+    }
+  };
+
+  /**
+   * Lists the folder.
+   * 
+   * @param folder folder to list.
+   * @param filter file-filtering rules, usually the current {@link SelectMode}.
+   * @param keys sort keys for the names.
+   * @return "Up.." item followed by sorted folders and files, 
+   * or <code>null</code> if the calling thread was interrupted.
+   */
+  static List<FileItem> list(File folder, FileItemFilter filter, SortKeys keys) {
+    String[] names = names(folder);
+    List<FileItem> entries = new ArrayList<FileItem>(names.length);
+    if (!entries(folder, names, 0, names.length, filter, keys, entries)) {
+      return null;
+    }
+    Collections.sort(entries, sorter);
+    return withUpItem(folder, entries);
+  }
+
+  /**
+   * Reads names of the folder children. Doesn't touch the children themselves,
+   * so it is cheap even for huge folders.
+   * @param folder folder to read.
+   * @return names, empty if the folder can't be read.
+   */
+  static String[] names(File folder) {
+    String[] names = folder.list();
+    if (names == null) {
+      // not a folder, I/O error or no permission to read it
+      return new String[0];
+    }
+    return names;
+  }
+
+  /**
+   * Adds items for <code>names[from..to)</code>, which pass the filter, to the result.
+   * @return <code>false</code> if the calling thread was interrupted.
+   */
+  static boolean entries(File folder, String[] names, int from, int to, FileItemFilter filter, SortKeys keys, 
+      List<FileItem> result) {
+    Thread thread = Thread.currentThread();
+    for (int i = from; i < to; i++) {
+      if (thread.isInterrupted()) {
+        return false;
+      }
+      FileItem item = FileItem.stat(folder, names[i], keys);
+      if (filter.accept(item)) {
+        result.add(item);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Same as {@link #entries(File, String[], int, int, FileItemFilter, SortKeys, List)}
+   * followed by sorting, but split into slices, which are listed and sorted by 
+   * the pool threads, and merged together afterwards.
+   * @param natural sort order, every slice gets its own {@link SortKeys}.
+   * @param pool runs the slices.
+   * @param parts number of slices.
+   * @return sorted items, or <code>null</code> if the calling thread was interrupted.
+   */
+  static List<FileItem> sortedEntries(final File folder, final String[] names, int from, int to,
+      final FileItemFilter filter, final boolean natural, ExecutorService pool, int parts) {
+    return sliced(folder, from, to, pool, parts, new Slices<List<FileItem>>() {
+      @Override
+      public List<FileItem> read(int sliceFrom, int sliceTo) {
+        List<FileItem> slice = new ArrayList<FileItem>(sliceTo - sliceFrom);
+        if (!entries(folder, names, sliceFrom, sliceTo, filter, new SortKeys(natural), slice)) {
+          return null;
+        }
+        Collections.sort(slice, sorter);
+        return slice;
+      }
+
+      @Override
+      public List<FileItem> merge(List<FileItem> lhs, List<FileItem> rhs) {
+        return DirectoryListing.merge(lhs, rhs);
+      }
+    });
+  }
+
+  /**
+   * Same as {@link #sortedEntries(File, String[], int, int, FileItemFilter, boolean, ExecutorService, int)},
+   * but reads the names into a {@link NameTable}, for a {@link PagedListing}.
+   * @return sorted table, or <code>null</code> if the calling thread was interrupted.
+   */
+  static NameTable sortedTable(final File folder, final String[] names, int from, int to,
+      final FileItemFilter filter, final boolean natural, ExecutorService pool, int parts) {
+    return sliced(folder, from, to, pool, parts, new Slices<NameTable>() {
+      @Override
+      public NameTable read(int sliceFrom, int sliceTo) {
+        return NameTable.read(folder, names, sliceFrom, sliceTo, filter, new SortKeys(natural));
+      }
+
+      @Override
+      public NameTable merge(NameTable lhs, NameTable rhs) {
+        return NameTable.merge(lhs, rhs);
+      }
+    });
+  }
+
+  /**
+   * Reads and sorts a range of names, merges sorted results.
+   */
+  private interface Slices<T> {
+    /**
+     * @return sorted result, or <code>null</code> if the calling thread was interrupted.
+     */
+    T read(int from, int to);
+
+    T merge(T lhs, T rhs);
+  }
+
+  /**
+   * Runs the slices of <code>[from..to)</code> on the pool, and merges them pairwise, 
+   * so every entry is copied log(parts) times.
+   * @return merged result, or <code>null</code> if the calling thread was interrupted.
+   */
+  private static <T> T sliced(File folder, int from, int to, ExecutorService pool, int parts, 
+      final Slices<T> slices) {
+    List<Future<T>> futures = new ArrayList<Future<T>>(parts);
+    int step = Math.max(1, (to - from + parts - 1) / parts);
+    for (int start = from; start < to; start += step) {
+      final int sliceFrom = start;
+      final int sliceTo = Math.min(start + step, to);
+      futures.add(pool.submit(new Callable<T>() {
+        @Override
+        public T call() {
+          return slices.read(sliceFrom, sliceTo);
+        }
+      }));
+    }
+    try {
+      List<T> sorted = new ArrayList<T>(futures.size());
+      for (Future<T> future : futures) {
+        T slice = future.get();
+        if (slice == null) {
+          return null;
+        }
+        sorted.add(slice);
+      }
+      if (sorted.isEmpty()) {
+        return slices.read(from, to);
+      }
+      while (sorted.size() > 1) {
+        List<T> merged = new ArrayList<T>((sorted.size() + 1) / 2);
+        for (int i = 0; i < sorted.size(); i += 2) {
+          merged.add(i + 1 < sorted.size() ? slices.merge(sorted.get(i), sorted.get(i + 1)) : sorted.get(i));
+        }
+        sorted = merged;
+      }
+      return sorted.get(0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      // a slice failed: the calling thread lists the whole range on its own
+      System.err.println("Parallel listing of " + folder + " failed: " + e.getCause());
+      return slices.read(from, to);
+    } finally {
+      // stops the rest of the slices, if cancelled
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Merges two lists, which are already sorted with {@link #sorter}. 
+   * @return new sorted list.
+   */
+  static List<FileItem> merge(List<FileItem> lhs, List<FileItem> rhs) {
+    List<FileItem> result = new ArrayList<FileItem>(lhs.size() + rhs.size());
+    int l = 0;
+    int r = 0;
+    while (l < lhs.size() && r < rhs.size()) {
+      if (sorter.compare(lhs.get(l), rhs.get(r)) <= 0) {
+        result.add(lhs.get(l++));
+      } else {
+        result.add(rhs.get(r++));
+      }
+    }
+    result.addAll(lhs.subList(l, lhs.size()));
+    result.addAll(rhs.subList(r, rhs.size()));
+    return result;
+  }
+
+  /**
+   * Diffs two listings, which are sorted with {@link #sorter}, in linear time.
+   * Rows, which didn't change, keep their old instances, so the adapter 
+   * can tell them apart from the new ones by identity and skip re-binding them.
+   * @param old listing, which is shown now.
+   * @param fresh new listing.
+   * @return fresh listing, with unchanged items taken from the old one.
+   */
+  static List<FileItem> reuse(List<FileItem> old, List<FileItem> fresh) {
+    List<FileItem> result = new ArrayList<FileItem>(fresh.size());
+    int o = 0;
+    int f = 0;
+    // "Up.." is always the first one, outside of the sort order
+    if (!old.isEmpty() && old.get(0).getType() == FileType.Up) {
+      o++;
+    }
+    if (!fresh.isEmpty() && fresh.get(0).getType() == FileType.Up) {
+      FileItem up = fresh.get(0);
+      result.add(o == 1 && old.get(0).isSameAs(up) ? old.get(0) : up);
+      f++;
+    }
+    while (f < fresh.size()) {
+      FileItem item = fresh.get(f);
+      int cmp = o < old.size() ? sorter.compare(old.get(o), item) : 1;
+      if (cmp < 0) {
+        // removed
+        o++;
+      } else if (cmp > 0) {
+        // added
+        result.add(item);
+        f++;
+      } else {
+        result.add(old.get(o).isSameAs(item) ? old.get(o) : item);
+        o++;
+        f++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Applies changes of a few children to a listing, without listing the folder again.
+   * @param folder listed folder.
+   * @param listing sorted listing, with or without "Up..".
+   * @param changed names of the children, which were created, deleted or modified.
+   * @param filter file-filtering rules.
+   * @param keys sort keys for the names.
+   * @return patched sorted listing, without "Up..", see {@link #withUpItem(File, List)}.
+   */
+  static List<FileItem> patch(File folder, List<FileItem> listing, Set<String> changed, 
+      FileItemFilter filter, SortKeys keys) {
+    List<FileItem> kept = new ArrayList<FileItem>(listing.size());
+    for (FileItem item : listing) {
+      if (item.getType() != FileType.Up && !changed.contains(item.getName())) {
+        kept.add(item);
+      }
+    }
+    List<FileItem> added = new ArrayList<FileItem>(changed.size());
+    for (String name : changed) {
+      FileItem item = FileItem.statIfExists(folder, name, keys);
+      if (item != null && filter.accept(item)) {
+        added.add(item);
+      }
+    }
+    Collections.sort(added, sorter);
+    return merge(kept, added);
+  }
+
+  /**
+   * @return "Up.." item (if the folder has a parent) followed by the entries.
+   */
+  static List<FileItem> withUpItem(File folder, List<FileItem> entries) {
+    File parentFolder = folder.getParentFile();
+    if (parentFolder == null) {
+      return entries;
+    }
+    List<FileItem> result = new ArrayList<FileItem>(entries.size() + 1);
+    result.add(FileItem.up(parentFolder));
+    result.addAll(entries);
+    return result;
+  }
+}
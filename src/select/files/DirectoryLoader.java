@@ -0,0 +1,424 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Lists folders on a background thread and delivers the result
+ * to the UI thread. Listings, which are still valid, are served
+ * from the {@link ListingCache}. If the {@link StorageIndex} is enabled, 
+ * the folder is shown from it at once, and listed afterwards.
+ * <br>
+ * Huge folders are streamed: the first chunk of entries is published
+ * as soon as it fits into a frame budget, every next chunk is sorted
+ * on its own and merged into the already published listing.
+ * If there are many entries left after the first chunk, they are split
+ * between all cores. Folders, which are too large to keep every row 
+ * in the memory, show their first chunk the same way, and the rest
+ * is read on all cores into a {@link PagedListing}.
+ * <br>
+ * Only the latest {@link #load(File, FileItemFilter, String)} request is delivered:
+ * starting a new one, or calling {@link #cancel()}, drops the previous result.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class DirectoryLoader {
+
+  /**
+   * Receives listings on the UI thread.
+   */
+  interface Listener {
+    /**
+     * @param items sorted listing, so far.
+     * @param complete <code>false</code>, if more chunks are coming.
+     */
+    void onListingLoaded(File folder, List<FileItem> items, boolean complete);
+  }
+
+  /**
+   * time to spend on the first chunk, so it shows up in the next frame
+   */
+  private static final long FIRST_CHUNK_NANOS = 8L * 1000 * 1000;
+  /**
+   * every next chunk gets twice the time, up to this limit:
+   * each publish re-binds the whole list, so they should be rare.
+   */
+  private static final long MAX_CHUNK_NANOS = 256L * 1000 * 1000;
+  /**
+   * how often to check the clock
+   */
+  private static final int CLOCK_STEP = 32;
+
+  private static final ExecutorService executor = Executors.newFixedThreadPool(2, 
+      new BackgroundThreadFactory("SelectFile-loader"));
+
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+  /**
+   * lists and sorts slices of huge folders in parallel
+   */
+  private static final ExecutorService sortPool = Executors.newFixedThreadPool(CORES, 
+      new BackgroundThreadFactory("SelectFile-sort"));
+
+  /**
+   * default for {@link #setParallelThreshold(int)}
+   */
+  static final int PARALLEL_THRESHOLD = 4096;
+  /**
+   * default for {@link #setWindowThreshold(int)}
+   */
+  static final int WINDOW_THRESHOLD = 20000;
+
+  private final ListingCache cache = ListingCache.shared();
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Listener listener;
+
+  // listing, which the listener got last; rows are diffed against it
+  private volatile List<FileItem> delivered = Collections.emptyList();
+  private Future<?> pending = null;
+  private int generation = 0;
+  private boolean naturalSort = false;
+  private int parallelThreshold = PARALLEL_THRESHOLD;
+  private int windowThreshold = WINDOW_THRESHOLD;
+
+  DirectoryLoader(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param naturalSort <code>true</code> to sort numbers in names by value, see {@link SortKeys}.
+   */
+  void setNaturalSort(boolean naturalSort) {
+    this.naturalSort = naturalSort;
+  }
+
+  /**
+   * @param parallelThreshold folders with more entries are listed and sorted by all cores.
+   */
+  void setParallelThreshold(int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  /**
+   * @param windowThreshold folders with at least this many entries are delivered
+   * as a {@link PagedListing}, which reads the metadata only for the rows around the visible ones.
+   */
+  void setWindowThreshold(int windowThreshold) {
+    this.windowThreshold = windowThreshold;
+  }
+
+  /**
+   * Starts listing the folder, cancelling the previous request.
+   * @param folder folder to list.
+   * @param filter file-filtering rules.
+   * @param filterKey identifies the filtering rules in the {@link ListingCache}.
+   */
+  void load(File folder, final FileItemFilter filter, final String filterKey) {
+    cancel();
+    // items share the path of the folder, it is resolved once
+    final File absolute = folder.getAbsoluteFile();
+    final int token = generation;
+    final boolean natural = naturalSort;
+    final int threshold = parallelThreshold;
+    final int window = windowThreshold;
+    pending = executor.submit(new Runnable() {
+      public void run() {
+        try {
+          stream(absolute, filter, filterKey, new SortKeys(natural), threshold, window, token);
+        } catch (RuntimeException e) {
+          // the future would swallow it, and the progress indicator would stay forever
+          System.err.println("Listing of " + absolute + " failed: " + e);
+          List<FileItem> empty = Collections.emptyList();
+          publish(absolute, DirectoryListing.withUpItem(absolute, empty), true, token);
+        }
+      }
+    });
+  }
+
+  /**
+   * Lists the folder again, after the caller has shown the listing, which it kept,
+   * e.g. on the way back. Rows, which didn't change, keep their instances,
+   * so nothing is re-bound, if the kept listing is still valid.
+   * @param items listing, which the caller shows now.
+   */
+  void revalidate(File folder, List<FileItem> items, FileItemFilter filter, String filterKey) {
+    // before loading: the result is diffed against it on the background thread
+    delivered = items;
+    load(folder, filter, filterKey);
+  }
+
+  /**
+   * Re-reads only the changed children of the folder, and delivers the listing
+   * with them, in the same sort order. Should not be called while loading:
+   * the patch would be lost in the next published chunk.
+   * @param folder folder, which was loaded last.
+   * @param changed names of the children, which were created, deleted or modified.
+   * @param filter file-filtering rules.
+   * @param filterKey identifies the filtering rules in the {@link ListingCache}.
+   */
+  void patch(final File folder, final Set<String> changed, final FileItemFilter filter, final String filterKey) {
+    cancel();
+    final int token = generation;
+    final boolean natural = naturalSort;
+    if (delivered instanceof PagedListing) {
+      final PagedListing paged = (PagedListing) delivered;
+      pending = executor.submit(new Runnable() {
+        public void run() {
+          // only the names are kept: the changed ones are patched into them
+          publishPaged(folder, paged.patch(changed, filter, new SortKeys(natural)), token);
+        }
+      });
+      return;
+    }
+    // patches are never run in parallel: each one is based on the previous one
+    final List<FileItem> base = delivered;
+    pending = executor.submit(new Runnable() {
+      public void run() {
+        // read before patching, as in stream()
+        long lastModified = folder.lastModified();
+        List<FileItem> patched = DirectoryListing.patch(folder, base, changed, filter, new SortKeys(natural));
+        publish(folder, DirectoryListing.withUpItem(folder, patched), true, token);
+        // the next open gets the patched listing, not the one before the change
+        cache.put(cacheKey(folder, filterKey, natural), lastModified, patched);
+      }
+    });
+  }
+
+  /**
+   * @return key of the folder listing in the {@link ListingCache}.
+   */
+  static String cacheKey(File folder, String filterKey, boolean natural) {
+    return ListingCache.key(folder, filterKey + (natural ? ":natural" : ""));
+  }
+
+  /**
+   * Runs on the background thread.
+   */
+  private void stream(File folder, FileItemFilter filter, String filterKey, SortKeys keys, 
+      int threshold, int window, int token) {
+    String key = cacheKey(folder, filterKey, keys.isNatural());
+    // read before listing: changes made while listing invalidate the result
+    long lastModified = folder.lastModified();
+    List<FileItem> cached = cache.get(key, lastModified);
+    if (cached != null) {
+      publish(folder, DirectoryListing.withUpItem(folder, cached), true, token);
+      return;
+    }
+    boolean painted = false;
+    StorageIndex index = StorageIndex.shared();
+    if (index != null) {
+      List<FileItem> indexed = index.list(folder, lastModified, filter, keys);
+      if (indexed != null && indexed.size() < window) {
+        // first paint only: files, which are edited in place, don't change 
+        // the folder time, so their sizes and dates in the index may be old
+        Collections.sort(indexed, DirectoryListing.sorter);
+        publish(folder, DirectoryListing.withUpItem(folder, indexed), false, token);
+        painted = true;
+      }
+    }
+
+    String[] names = DirectoryListing.names(folder);
+    if (names.length >= window) {
+      streamPaged(folder, names, filter, keys, token);
+      return;
+    }
+    if (painted) {
+      // the indexed rows are shown: replace them at once, not chunk by chunk
+      List<FileItem> fresh;
+      if (CORES > 1 && names.length >= threshold) {
+        fresh = DirectoryListing.sortedEntries(folder, names, 0, names.length, 
+            filter, keys.isNatural(), sortPool, CORES);
+      } else {
+        fresh = new ArrayList<FileItem>(names.length);
+        if (DirectoryListing.entries(folder, names, 0, names.length, filter, keys, fresh)) {
+          Collections.sort(fresh, DirectoryListing.sorter);
+        } else {
+          fresh = null;
+        }
+      }
+      if (fresh == null) {
+        // cancelled
+        return;
+      }
+      publish(folder, DirectoryListing.withUpItem(folder, fresh), true, token);
+      cache.put(key, lastModified, fresh);
+      return;
+    }
+    List<FileItem> sorted = Collections.emptyList();
+    long budget = FIRST_CHUNK_NANOS;
+    int from = 0;
+    do {
+      List<FileItem> chunk = new ArrayList<FileItem>();
+      long deadline = System.nanoTime() + budget;
+      int to = from;
+      do {
+        int next = Math.min(to + CLOCK_STEP, names.length);
+        if (!DirectoryListing.entries(folder, names, to, next, filter, keys, chunk)) {
+          // cancelled
+          return;
+        }
+        to = next;
+      } while (to < names.length && System.nanoTime() < deadline);
+      Collections.sort(chunk, DirectoryListing.sorter);
+      sorted = DirectoryListing.merge(sorted, chunk);
+      boolean complete = to == names.length;
+      if (from == 0 || complete || !chunk.isEmpty()) {
+        publish(folder, DirectoryListing.withUpItem(folder, sorted), complete, token);
+      }
+      from = to;
+      budget = Math.min(budget * 2, MAX_CHUNK_NANOS);
+
+      if (CORES > 1 && names.length - from >= threshold) {
+        // the first screen is shown, let all cores do the rest
+        List<FileItem> rest = DirectoryListing.sortedEntries(folder, names, from, names.length, 
+            filter, keys.isNatural(), sortPool, CORES);
+        if (rest == null) {
+          // cancelled
+          return;
+        }
+        sorted = DirectoryListing.merge(sorted, rest);
+        publish(folder, DirectoryListing.withUpItem(folder, sorted), true, token);
+        from = names.length;
+      }
+    } while (from < names.length);
+    cache.put(key, lastModified, sorted);
+  }
+
+  /**
+   * Shows the first page as soon as it is read, as the first chunk of a regular listing, 
+   * then reads the rest into a {@link PagedListing} on all cores.
+   * Runs on the background thread.
+   */
+  private void streamPaged(File folder, String[] names, FileItemFilter filter, SortKeys keys, int token) {
+    List<FileItem> first = new ArrayList<FileItem>();
+    long deadline = System.nanoTime() + FIRST_CHUNK_NANOS;
+    int to = 0;
+    do {
+      int next = Math.min(to + CLOCK_STEP, names.length);
+      if (!DirectoryListing.entries(folder, names, to, next, filter, keys, first)) {
+        // cancelled
+        return;
+      }
+      to = next;
+    } while (to < names.length && first.size() < PagedListing.PAGE_SIZE && System.nanoTime() < deadline);
+    Collections.sort(first, DirectoryListing.sorter);
+    publish(folder, DirectoryListing.withUpItem(folder, first), false, token);
+
+    NameTable rest = DirectoryListing.sortedTable(folder, names, to, names.length, 
+        filter, keys.isNatural(), sortPool, CORES);
+    if (rest == null) {
+      // cancelled
+      return;
+    }
+    // never cached: it would hold all the names, and it can't be validated per page
+    publishPaged(folder, new PagedListing(folder, NameTable.merge(NameTable.of(first), rest)), token);
+  }
+
+  private void publish(final File folder, List<FileItem> listing, final boolean complete, final int token) {
+    List<FileItem> old = delivered;
+    // diffing against a paged listing would read all of its pages
+    final List<FileItem> items = old instanceof PagedListing ? listing : DirectoryListing.reuse(old, listing);
+    handler.post(new Runnable() {
+      public void run() {
+        if (token == generation) {
+          delivered = items;
+          if (complete) {
+            pending = null;
+          }
+          listener.onListingLoaded(folder, items, complete);
+        }
+      }
+    });
+  }
+
+  private void publishPaged(final File folder, final PagedListing listing, final int token) {
+    handler.post(new Runnable() {
+      public void run() {
+        if (token == generation) {
+          delivered = listing;
+          pending = null;
+          listener.onListingLoaded(folder, listing, true);
+        }
+      }
+    });
+  }
+
+  /**
+   * Drops the request in progress, if any.
+   */
+  void cancel() {
+    generation++;
+    if (pending != null) {
+      pending.cancel(true);
+      pending = null;
+    }
+  }
+
+  boolean isLoading() {
+    return pending != null;
+  }
+
+  /**
+   * Creates daemon threads with background priority, 
+   * so listing never competes with the UI thread.
+   */
+  static class BackgroundThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+    private final String name;
+
+    BackgroundThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      Thread t = new Thread(new Runnable() {
+        public void run() {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          r.run();
+        }
+      }, name + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
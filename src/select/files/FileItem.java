@@ -0,0 +1,239 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.text.CollationKey;
+
+/**
+ * One row of the {@link SelectDialog} list.
+ * <br>
+ * Keeps a snapshot of the file metadata, read with a single <code>stat</code>
+ * call, so sorting and filtering never go back to the disk.
+ * <br>
+ * Items of one listing share the path of their folder, and keep only their 
+ * own name, so there are no per-row {@link File} objects or path strings:
+ * those are built on demand, e.g. when the row is clicked. A row is still 
+ * an object with its name and sort key: the adapter, the diff and the caches 
+ * all work with items, and huge folders go to a {@link PagedListing} instead.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class FileItem {
+  /**
+   * child count of a folder, which wasn't counted yet
+   */
+  static final int UNKNOWN = -1;
+  // size and time of an item, which metadata is not read yet
+  private static final long PENDING = -1;
+
+  private final String name;
+  private final FileType type;
+  // absolute path of the folder, one instance for the whole listing
+  private final String parent;
+  private final long size;
+  private final long lastModified;
+  private final CollationKey sortKey;
+  // counted on demand by the DetailsLoader
+  private volatile int childCount = UNKNOWN;
+  // formatted by the DetailsLoader, when the row is shown first
+  private volatile String details = null;
+  // resolved by the ThumbnailLoader, when the row is shown first
+  private volatile String thumbnailKey = null;
+
+  /**
+   * Creates the "Up.." item, which is never sorted.
+   * @param parentFolder folder, which the item leads to.
+   */
+  static FileItem up(File parentFolder) {
+    return new FileItem(SelectConstants.fs_up_item, FileType.Up, parentFolder.getAbsolutePath(), 0, 0, null);
+  }
+
+  /**
+   * Creates an item, which metadata is not read yet, see {@link #isPending()}.
+   */
+  static FileItem pending(String name, FileType type, String parent) {
+    return new FileItem(name, type, parent, PENDING, PENDING, null);
+  }
+
+  /**
+   * @param parent absolute path of the folder, which contains the item; "Up.." item leads to it.
+   */
+  public FileItem(String name, FileType type, String parent, long size, long lastModified, CollationKey sortKey) {
+    this.name = name;
+    this.type = type;
+    this.parent = parent;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.sortKey = sortKey;
+  }
+
+  /**
+   * Reads metadata of the folder child.
+   * @param folder parent folder.
+   * @param name child name.
+   * @param keys creates the sort key for the name, <code>null</code> for items, which are never sorted.
+   * @return item with the metadata snapshot.
+   */
+  static FileItem stat(File folder, String name, SortKeys keys) {
+    // the same instance for every child, if the folder path is absolute
+    String parent = folder.getAbsolutePath();
+    FileStat st = FileStat.stat(FileStat.path(parent, name));
+    CollationKey key = keys == null ? null : keys.key(name);
+    if (st == null) {
+      // broken link or no access: java.io.File reports it as a plain file, too
+      return new FileItem(name, FileType.File, parent, 0, 0, key);
+    }
+    return new FileItem(name, st.directory ? FileType.Folder : FileType.File, parent, st.size, st.lastModified, key);
+  }
+
+  /**
+   * Same as {@link #stat(File, String, SortKeys)}, but tells a missing child
+   * from a broken link.
+   * @return item with the metadata snapshot, or <code>null</code> if there is no such child.
+   */
+  static FileItem statIfExists(File folder, String name, SortKeys keys) {
+    if (FileStat.lstat(FileStat.path(folder.getAbsolutePath(), name)) == null) {
+      return null;
+    }
+    return stat(folder, name, keys);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public FileType getType() {
+    return type;
+  }
+
+  /**
+   * @return new File for the item; for "Up.." - its target folder.
+   */
+  public File getFile() {
+    return type == FileType.Up ? new File(parent) : new File(parent, name);
+  }
+
+  /**
+   * @return absolute path of the folder, which contains the item, or the target of "Up..".
+   */
+  public String getParent() {
+    return parent;
+  }
+
+  /**
+   * @return <code>true</code>, if only the name and the type are known, 
+   * see {@link PagedListing}.
+   */
+  boolean isPending() {
+    return size == PENDING;
+  }
+
+  public boolean isDirectory() {
+    return type == FileType.Folder;
+  }
+
+  /**
+   * @return size in bytes, as it was when the item was created.
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return modification time in milliseconds, as it was when the item was created.
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return key for name sorting, precomputed by {@link SortKeys}.
+   */
+  CollationKey getSortKey() {
+    return sortKey;
+  }
+
+  /**
+   * @return absolute path, a new string on every call.
+   */
+  public String getFullPath() {
+    return getFile().getPath();
+  }
+
+  /**
+   * @return number of children of a folder, or {@link #UNKNOWN}, if not counted yet.
+   */
+  int getChildCount() {
+    return childCount;
+  }
+
+  void setChildCount(int childCount) {
+    this.childCount = childCount;
+    details = null;
+  }
+
+  /**
+   * @return size or child count and date, as shown in the row, or <code>null</code> if not formatted yet.
+   */
+  String getDetails() {
+    return details;
+  }
+
+  void setDetails(String details) {
+    this.details = details;
+  }
+
+  /**
+   * @return cache key of the thumbnail, empty if the file has none, 
+   * or <code>null</code> if not resolved yet.
+   */
+  String getThumbnailKey() {
+    return thumbnailKey;
+  }
+
+  void setThumbnailKey(String thumbnailKey) {
+    this.thumbnailKey = thumbnailKey;
+  }
+
+  /**
+   * @return <code>true</code>, if the other item shows the same file with the same metadata.
+   */
+  boolean isSameAs(FileItem other) {
+    return type == other.type
+        && size == other.size
+        && lastModified == other.lastModified
+        && name.equals(other.name)
+        && parent.equals(other.parent);
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
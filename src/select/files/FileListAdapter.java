@@ -0,0 +1,241 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+/**
+ * Adapter for the {@link SelectDialog} list.
+ * <br>
+ * Row views are recycled together with a {@link RowHolder}, so binding
+ * a row doesn't look up views, and doesn't allocate.
+ * <br>
+ * Size and date come from the {@link FileItem} snapshot. They are formatted,
+ * and child counts of folders are loaded, by a {@link DetailsLoader} 
+ * for the bound rows only, and filled in when they are ready, 
+ * so scrolling never waits for them.
+ * Thumbnails of images and videos are loaded the same way, by a {@link ThumbnailLoader}.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class FileListAdapter extends BaseAdapter {
+
+  private final Context context;
+  private List<FileItem> items = Collections.emptyList();
+  // all holders, which were created: as many as the rows, which fit the screen
+  private final List<RowHolder> holders = new ArrayList<RowHolder>();
+  private final DetailsLoader detailsLoader;
+  private final ThumbnailLoader thumbnails;
+  // checked rows, in the multi-selection mode
+  private CheckedSet checked = null;
+
+  FileListAdapter(Context context) {
+    this.context = context;
+    this.detailsLoader = new DetailsLoader(context, new DetailsLoader.Listener() {
+      @Override
+      public void onDetailsLoaded(List<FileItem> loaded) {
+        for (RowHolder holder : holders) {
+          if (loaded.contains(holder.item)) {
+            holder.bindDetails();
+          }
+        }
+      }
+    });
+    this.thumbnails = new ThumbnailLoader(context, SelectConstants.thumbnailSize(context));
+  }
+
+  /**
+   * @param checked checked files are highlighted, <code>null</code> if nothing can be checked.
+   */
+  void setChecked(CheckedSet checked) {
+    this.checked = checked;
+  }
+
+  /**
+   * Stops loading details, thumbnails and pages. Rows are bound from scratch next time,
+   * so a dialog, which is shown again, loads them again for the same items.
+   */
+  void cancel() {
+    detailsLoader.cancel();
+    thumbnails.cancel();
+    if (items instanceof PagedListing) {
+      ((PagedListing) items).cancel();
+    }
+    for (RowHolder holder : holders) {
+      holder.item = null;
+    }
+    notifyDataSetChanged();
+  }
+
+  /**
+   * Replaces the whole listing, notifies once, if anything changed.
+   * Rows, which still show the same {@link FileItem} instance, are not re-bound,
+   * see {@link DirectoryListing#reuse(List, List)}.
+   * @param items new listing, must not be modified afterwards.
+   */
+  void setItems(List<FileItem> items) {
+    if (items instanceof PagedListing) {
+      // comparing would read every page
+      ((PagedListing) items).setOnPageLoaded(new Runnable() {
+        public void run() {
+          notifyDataSetChanged();
+        }
+      });
+    } else if (isSame(this.items, items)) {
+      return;
+    }
+    if (this.items instanceof PagedListing && this.items != items) {
+      ((PagedListing) this.items).setOnPageLoaded(null);
+      ((PagedListing) this.items).cancel();
+    }
+    this.items = items;
+    notifyDataSetChanged();
+  }
+
+  private static boolean isSame(List<FileItem> lhs, List<FileItem> rhs) {
+    if (lhs.size() != rhs.size()) {
+      return false;
+    }
+    for (int i = 0; i < lhs.size(); i++) {
+      if (lhs.get(i) != rhs.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int getCount() {
+    return items.size();
+  }
+
+  @Override
+  public FileItem getItem(int position) {
+    return items.get(position);
+  }
+
+  @Override
+  public long getItemId(int position) {
+    return position;
+  }
+
+  @Override
+  public View getView(int position, View convertView, ViewGroup parent) {
+    RowHolder holder;
+    if (convertView == null) {
+      convertView = SelectConstants.generateRowViews(context);
+      holder = new RowHolder(convertView);
+      convertView.setTag(holder);
+      holders.add(holder);
+    } else {
+      holder = (RowHolder) convertView.getTag();
+    }
+    holder.bind(getItem(position));
+    return convertView;
+  }
+
+  /**
+   * Child views of a row.
+   */
+  private class RowHolder {
+    private final View row;
+    private final TextView name;
+    private final TextView path;
+    private final TextView details;
+    private final ImageView thumbnail;
+    private int color = 0;
+    private boolean isChecked = false;
+    private FileItem item = null;
+
+    RowHolder(View row) {
+      this.row = row;
+      this.name = (TextView) row.findViewById(SelectConstants.RID_ROW_NAME_TV);
+      this.path = (TextView) row.findViewById(SelectConstants.RID_ROW_PATH_TV);
+      this.details = (TextView) row.findViewById(SelectConstants.RID_ROW_DETAILS_TV);
+      this.thumbnail = (ImageView) row.findViewById(SelectConstants.RID_ROW_THUMB_IV);
+    }
+
+    void bind(FileItem item) {
+      boolean checkedNow = checked != null && !item.isDirectory() && checked.contains(item.getParent(), item.getName());
+      if (this.item == item && isChecked == checkedNow) {
+        return;
+      }
+      isChecked = checkedNow;
+      int colorNow = checkedNow ? SelectConstants.COLOR_CHECKED : item.getType().getColor();
+      if (color != colorNow) {
+        color = colorNow;
+        row.setBackgroundColor(color);
+      }
+      if (this.item == item) {
+        return;
+      }
+      if (this.item != null) {
+        // the row is recycled, its folder isn't needed any more
+        detailsLoader.forget(this.item);
+      }
+      this.item = item;
+      name.setText(item.getName());
+      // the name is right above, the folder path is shared by the whole listing
+      path.setText(item.getParent());
+      bindDetails();
+      if (item.isPending()) {
+        thumbnails.load(thumbnail, null);
+      } else {
+        thumbnails.load(thumbnail, item);
+      }
+    }
+
+    void bindDetails() {
+      if (item.getType() == FileType.Up) {
+        details.setVisibility(View.GONE);
+        return;
+      }
+      details.setVisibility(View.VISIBLE);
+      if (item.isPending()) {
+        // the page is being read, the real item comes with it
+        details.setText("…");
+        return;
+      }
+      String text = item.getDetails();
+      if (text == null) {
+        detailsLoader.request(item);
+        text = "…";
+      }
+      details.setText(text);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+
+/**
+ * Metadata of a file, read with a single <code>stat</code> call where the platform allows it.
+ * <br>
+ * <code>android.system.Os</code> appeared in API 21. Older devices fall back 
+ * to {@link File}, which needs a call per attribute, and tells links by their canonical path.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class FileStat {
+
+  private static final boolean HAS_OS = Build.VERSION.SDK_INT >= 21;
+
+  final boolean directory;
+  final boolean link;
+  final long size;
+  final long lastModified;
+
+  private FileStat(boolean directory, boolean link, long size, long lastModified) {
+    this.directory = directory;
+    this.link = link;
+    this.size = size;
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * @return path of the folder child, without a {@link File} object.
+   */
+  static String path(String parent, String name) {
+    return parent.endsWith(File.separator) ? parent + name : parent + File.separator + name;
+  }
+
+  /**
+   * Describes the file, or the target, if it is a link.
+   * @return metadata, or <code>null</code> for a missing file, a broken link, or no access.
+   */
+  static FileStat stat(String path) {
+    if (HAS_OS) {
+      return Posix.stat(path, false);
+    }
+    File file = new File(path);
+    if (!file.exists()) {
+      return null;
+    }
+    boolean directory = file.isDirectory();
+    return new FileStat(directory, false, directory ? 0 : file.length(), file.lastModified());
+  }
+
+  /**
+   * Describes the file itself, even if it is a link.
+   * @return metadata, or <code>null</code>, if there is no such file.
+   */
+  static FileStat lstat(String path) {
+    if (HAS_OS) {
+      return Posix.stat(path, true);
+    }
+    if (isLink(new File(path))) {
+      return new FileStat(false, true, 0, 0);
+    }
+    return stat(path);
+  }
+
+  private static boolean isLink(File file) {
+    try {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent == null) {
+        return false;
+      }
+      File resolved = new File(parent.getCanonicalFile(), file.getName());
+      return !resolved.getCanonicalFile().equals(resolved.getAbsoluteFile());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Loaded on API 21+ only, so older devices never resolve <code>android.system</code> classes.
+   */
+  private static final class Posix {
+    static FileStat stat(String path, boolean noFollow) {
+      try {
+        StructStat st = noFollow ? Os.lstat(path) : Os.stat(path);
+        boolean directory = OsConstants.S_ISDIR(st.st_mode);
+        return new FileStat(directory, OsConstants.S_ISLNK(st.st_mode), st.st_size, st.st_mtime * 1000L);
+      } catch (ErrnoException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+/**
+ * Kind of the {@link FileItem}, defines the row color.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+enum FileType {
+  File(SelectConstants.COLOR_FILE), 
+  Folder(SelectConstants.COLOR_FOLDER),
+  Up(SelectConstants.COLOR_UP);
+  
+  private final int color;
+
+  FileType(int color) {
+    this.color = color;
+  }
+  
+  public int getColor() {
+    return color;
+  }
+  
+}
@@ -0,0 +1,169 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Watches one folder with inotify, and reports which children changed.
+ * <br>
+ * Events come in bursts, e.g. a download creates, writes and renames a file,
+ * so they are collected for a short time and reported together. 
+ * Writes are reported once the file is closed, not on every chunk.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class FolderWatcher {
+
+  /**
+   * Receives changes on the UI thread.
+   */
+  interface Listener {
+    /**
+     * @param folder watched folder.
+     * @param changed names of the children, which were created, deleted, moved or written.
+     * Empty, if the folder itself was deleted or moved.
+     */
+    void onFolderChanged(File folder, Set<String> changed);
+  }
+
+  /**
+   * collect events for this long before reporting them
+   */
+  private static final long COALESCE_MS = 100;
+
+  private static final int CHILD_EVENTS = FileObserver.CREATE | FileObserver.DELETE 
+      | FileObserver.MOVED_FROM | FileObserver.MOVED_TO 
+      | FileObserver.CLOSE_WRITE | FileObserver.ATTRIB;
+  private static final int SELF_EVENTS = FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Listener listener;
+
+  private File folder = null;
+  private Observer observer = null;
+  // filled on the observer thread, drained on the UI thread
+  private final Set<String> changed = new HashSet<String>();
+  private boolean selfChanged = false;
+
+  FolderWatcher(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Starts watching the folder, stops watching the previous one.
+   */
+  void watch(File folder) {
+    stop();
+    this.folder = folder;
+    observer = new Observer(folder.getPath());
+    observer.startWatching();
+  }
+
+  void stop() {
+    handler.removeCallbacks(report);
+    if (observer != null) {
+      observer.stopWatching();
+      observer = null;
+    }
+    synchronized (changed) {
+      changed.clear();
+      selfChanged = false;
+    }
+  }
+
+  /**
+   * Reports the changes of the children again later, e.g. when they can't be applied right now.
+   */
+  void postpone(Set<String> names) {
+    synchronized (changed) {
+      changed.addAll(names);
+    }
+    handler.removeCallbacks(report);
+    handler.postDelayed(report, COALESCE_MS);
+  }
+
+  private final Runnable report = new Runnable() {
+    public void run() {
+      Set<String> names;
+      synchronized (changed) {
+        if (changed.isEmpty() && !selfChanged) {
+          return;
+        }
+        names = selfChanged ? new HashSet<String>() : new HashSet<String>(changed);
+        changed.clear();
+        selfChanged = false;
+      }
+      listener.onFolderChanged(folder, names);
+    }
+  };
+
+  private class Observer extends FileObserver {
+
+    Observer(String path) {
+      super(path, CHILD_EVENTS | SELF_EVENTS);
+    }
+
+    /**
+     * Runs on the observer thread.
+     */
+    @Override
+    public void onEvent(int event, String path) {
+      event &= FileObserver.ALL_EVENTS;
+      boolean first;
+      synchronized (changed) {
+        first = changed.isEmpty() && !selfChanged;
+        if ((event & SELF_EVENTS) != 0) {
+          selfChanged = true;
+        } else if ((event & CHILD_EVENTS) != 0 && path != null) {
+          changed.add(path);
+        } else {
+          return;
+        }
+      }
+      if (first) {
+        final Observer self = this;
+        handler.postDelayed(new Runnable() {
+          public void run() {
+            // stale, if the folder changed meanwhile
+            if (observer == self) {
+              report.run();
+            }
+          }
+        }, COALESCE_MS);
+      }
+    }
+  }
+}
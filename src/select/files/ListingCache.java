@@ -0,0 +1,198 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of sorted and filtered folder listings.
+ * <br>
+ * Listings are keyed by the folder path and the filtering rules, and
+ * validated with the folder modification time: adding, removing or
+ * renaming a child changes it, so a listing with the same time is still valid.
+ * <br>
+ * One instance is shared by all dialogs, so it survives between
+ * {@link SelectLibrary} calls. Thread-safe.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class ListingCache {
+
+  private static final int MAX_LISTINGS = 32;
+  private static final int MAX_ITEMS = 100000;
+
+  private static final ListingCache shared = new ListingCache(MAX_LISTINGS, MAX_ITEMS);
+
+  static ListingCache shared() {
+    return shared;
+  }
+
+  private static class Entry {
+    final long lastModified;
+    final List<FileItem> items;
+    // put by the Prefetcher, and not used yet
+    boolean prefetched;
+
+    Entry(long lastModified, List<FileItem> items, boolean prefetched) {
+      this.lastModified = lastModified;
+      this.items = items;
+      this.prefetched = prefetched;
+    }
+  }
+
+  private final int maxListings;
+  private final int maxItems;
+  // access-ordered: the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> listings = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private int itemCount = 0;
+  private int hits = 0;
+  private int misses = 0;
+  private int prefetches = 0;
+  private int prefetchHits = 0;
+
+  ListingCache(int maxListings, int maxItems) {
+    this.maxListings = maxListings;
+    this.maxItems = maxItems;
+  }
+
+  static String key(File folder, String filterKey) {
+    return folder.getAbsolutePath() + '\n' + filterKey;
+  }
+
+  /**
+   * @param key see {@link #key(File, String)}.
+   * @param lastModified current modification time of the folder.
+   * @return sorted listing, or <code>null</code> if there is no valid one.
+   */
+  synchronized List<FileItem> get(String key, long lastModified) {
+    Entry entry = listings.get(key);
+    if (entry != null && entry.lastModified == lastModified) {
+      hits++;
+      if (entry.prefetched) {
+        entry.prefetched = false;
+        prefetchHits++;
+      }
+      return entry.items;
+    }
+    if (entry != null) {
+      // stale
+      remove(key);
+    }
+    misses++;
+    return null;
+  }
+
+  /**
+   * @param key see {@link #key(File, String)}.
+   * @param lastModified modification time of the folder, read before listing it.
+   * @param items sorted listing, must not be modified afterwards.
+   */
+  synchronized void put(String key, long lastModified, List<FileItem> items) {
+    put(key, lastModified, items, false);
+  }
+
+  /**
+   * Same as {@link #put(String, long, List)}, for listings, which nobody asked for yet.
+   * Counted separately, see {@link #getPrefetchHits()}.
+   */
+  synchronized void prefetched(String key, long lastModified, List<FileItem> items) {
+    if (put(key, lastModified, items, true)) {
+      prefetches++;
+    }
+  }
+
+  /**
+   * Checks the listing without counting a hit or a miss.
+   * @return <code>true</code>, if there is a valid listing for the key.
+   */
+  synchronized boolean contains(String key, long lastModified) {
+    // not get(): it would make the entry the most recently used one; there are few entries
+    for (Map.Entry<String, Entry> e : listings.entrySet()) {
+      if (e.getKey().equals(key)) {
+        return e.getValue().lastModified == lastModified;
+      }
+    }
+    return false;
+  }
+
+  private boolean put(String key, long lastModified, List<FileItem> items, boolean prefetched) {
+    if (lastModified == 0 || items.size() > maxItems) {
+      // unknown time can't be validated; huge listings would flush everything else
+      return false;
+    }
+    remove(key);
+    listings.put(key, new Entry(lastModified, Collections.unmodifiableList(items), prefetched));
+    itemCount += items.size();
+
+    Iterator<Entry> eldest = listings.values().iterator();
+    while (listings.size() > maxListings || itemCount > maxItems) {
+      itemCount -= eldest.next().items.size();
+      eldest.remove();
+    }
+    return true;
+  }
+
+  private void remove(String key) {
+    Entry old = listings.remove(key);
+    if (old != null) {
+      itemCount -= old.items.size();
+    }
+  }
+
+  synchronized void clear() {
+    listings.clear();
+    itemCount = 0;
+  }
+
+  synchronized int getHits() {
+    return hits;
+  }
+
+  synchronized int getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return how many listings were put by the {@link Prefetcher}.
+   */
+  synchronized int getPrefetches() {
+    return prefetches;
+  }
+
+  /**
+   * @return how many prefetched listings were used afterwards.
+   */
+  synchronized int getPrefetchHits() {
+    return prefetchHits;
+  }
+}
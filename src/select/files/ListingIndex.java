@@ -0,0 +1,226 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index over the names of a listing, built once per listing.
+ * Queries match anywhere in the name, the same as {@link #scan(List, String)}, 
+ * however long they are. The rarest trigram of the query picks the candidates, 
+ * which are checked afterwards; queries of one or two characters check every name.
+ * <br>
+ * Trigram postings are kept in one sorted <code>long[]</code> of 
+ * (trigram hash, item index) pairs, so building the index boxes nothing.
+ * Matching ignores case. Results keep the listing order. 
+ * Immutable, so it can be queried from any thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class ListingIndex {
+
+  private static final int TRIGRAM = 3;
+  // item index goes into the low bits of a posting, the trigram hash into the rest
+  private static final int INDEX_BITS = 24;
+  private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+  private final List<FileItem> source;
+  private final List<FileItem> items;
+  private final String[] names;
+  // sorted (trigram hash, item index) pairs, null if there are too many items to pack
+  private final long[] postings;
+
+  private ListingIndex(List<FileItem> source, List<FileItem> items, String[] names, long[] postings) {
+    this.source = source;
+    this.items = items;
+    this.names = names;
+    this.postings = postings;
+  }
+
+  /**
+   * @param listing complete sorted listing, "Up.." item is not indexed.
+   * @return index, or <code>null</code> if the calling thread was interrupted.
+   */
+  static ListingIndex build(List<FileItem> listing) {
+    List<FileItem> items = new ArrayList<FileItem>(listing.size());
+    for (FileItem item : listing) {
+      if (item.getType() != FileType.Up) {
+        items.add(item);
+      }
+    }
+    String[] names = new String[items.size()];
+    int count = 0;
+    Thread thread = Thread.currentThread();
+    for (int i = 0; i < names.length; i++) {
+      String name = items.get(i).getName().toLowerCase(Locale.ROOT);
+      names[i] = name;
+      count += Math.max(0, name.length() - TRIGRAM + 1);
+    }
+
+    long[] postings = null;
+    if (names.length <= INDEX_MASK) {
+      postings = new long[count];
+      int p = 0;
+      for (int i = 0; i < names.length; i++) {
+        if (thread.isInterrupted()) {
+          return null;
+        }
+        String name = names[i];
+        for (int c = 0; c + TRIGRAM <= name.length(); c++) {
+          postings[p++] = (hash(name, c) << INDEX_BITS) | i;
+        }
+      }
+      Arrays.sort(postings);
+      postings = unique(postings);
+    }
+    if (thread.isInterrupted()) {
+      return null;
+    }
+    return new ListingIndex(listing, items, names, postings);
+  }
+
+  /**
+   * Matches the names one by one, for listings, which are still loading, 
+   * and aren't worth an index yet.
+   * @return matching items, in the listing order.
+   */
+  static List<FileItem> scan(List<FileItem> listing, String query) {
+    String q = query.toLowerCase(Locale.ROOT);
+    List<FileItem> result = new ArrayList<FileItem>();
+    for (FileItem item : listing) {
+      if (item.getType() != FileType.Up && item.getName().toLowerCase(Locale.ROOT).contains(q)) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Three chars take 48 bits, the hash keeps 39 of them: names, which only share
+   * a hash, are dropped when the candidates are checked.
+   */
+  private static long hash(String s, int from) {
+    long trigram = ((long) s.charAt(from) << 32) | ((long) s.charAt(from + 1) << 16) | s.charAt(from + 2);
+    return (trigram ^ (trigram >>> 40)) & ((1L << (64 - INDEX_BITS - 1)) - 1);
+  }
+
+  /**
+   * Drops repeated trigrams of the same name.
+   */
+  private static long[] unique(long[] sorted) {
+    int size = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (size == 0 || sorted[size - 1] != sorted[i]) {
+        sorted[size++] = sorted[i];
+      }
+    }
+    return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+  }
+
+  /**
+   * @return <code>true</code>, if the index was built for this very listing.
+   */
+  boolean isFor(List<FileItem> listing) {
+    return source == listing;
+  }
+
+  /**
+   * @param query text to look for, empty matches everything.
+   * @return matching items, in the listing order.
+   */
+  List<FileItem> query(String query) {
+    String q = query.toLowerCase(Locale.ROOT);
+    if (q.length() == 0) {
+      return items;
+    }
+    List<FileItem> result = new ArrayList<FileItem>();
+    if (q.length() < TRIGRAM || postings == null) {
+      byScan(q, result);
+    } else {
+      byTrigrams(q, result);
+    }
+    return result;
+  }
+
+  /**
+   * Checks every name, for queries, which are shorter than a trigram,
+   * or listings, which are too large to pack.
+   */
+  private void byScan(String q, List<FileItem> result) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].contains(q)) {
+        result.add(items.get(i));
+      }
+    }
+  }
+
+  private void byTrigrams(String q, List<FileItem> result) {
+    int rarestFrom = 0;
+    int rarestTo = -1;
+    for (int c = 0; c + TRIGRAM <= q.length(); c++) {
+      long key = hash(q, c) << INDEX_BITS;
+      int from = bound(key, false);
+      int to = bound(key | INDEX_MASK, true);
+      if (from == to) {
+        return;
+      }
+      if (rarestTo < 0 || to - from < rarestTo - rarestFrom) {
+        rarestFrom = from;
+        rarestTo = to;
+      }
+    }
+    // postings of one trigram are ordered by item index
+    for (int p = rarestFrom; p < rarestTo; p++) {
+      int i = (int) (postings[p] & INDEX_MASK);
+      if (names[i].contains(q)) {
+        result.add(items.get(i));
+      }
+    }
+  }
+
+  /**
+   * @return index of the first posting, which is not less than the key, 
+   * or greater than the key, if <code>after</code>.
+   */
+  private int bound(long key, boolean after) {
+    int low = 0;
+    int high = postings.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (postings[mid] < key || (after && postings[mid] == key)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Calls the sketch method by its name, like <code>PApplet.selectInput()</code> does.
+ * <br>
+ * Methods are looked up once per (class, method name, parameter type) and cached,
+ * while callbacks use them.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class MethodCallback implements SelectCallback, MultiSelectCallback {
+
+  // weak keys and values: a method references its class, so a strong value 
+  // would keep the classes of finished sketches alive
+  private static final Map<Class<?>, Map<String, WeakReference<Method>>> methods = 
+      new WeakHashMap<Class<?>, Map<String, WeakReference<Method>>>();
+
+  private final Object target;
+  private final Method method;
+
+  private MethodCallback(Object target, Method method) {
+    this.target = target;
+    this.method = method;
+  }
+
+  /**
+   * @param target object, which has the method.
+   * @param methodName name of a public method, which takes a single File.
+   * @return callback, which calls the method.
+   * @throws IllegalArgumentException if there is no such method.
+   */
+  static SelectCallback forMethod(Object target, String methodName) {
+    try {
+      return new MethodCallback(target, find(target.getClass(), methodName, File.class));
+    } catch (NoSuchMethodException nsme) {
+      throw new IllegalArgumentException(methodName + "(File) could not be found, or is not public");
+    }
+  }
+
+  /**
+   * @param target object, which has the method.
+   * @param methodName name of a public method, which takes a File[].
+   * @return callback, which calls the method.
+   * @throws IllegalArgumentException if there is no such method.
+   */
+  static MultiSelectCallback forMultipleMethod(Object target, String methodName) {
+    try {
+      return new MethodCallback(target, find(target.getClass(), methodName, File[].class));
+    } catch (NoSuchMethodException nsme) {
+      throw new IllegalArgumentException(methodName + "(File[]) could not be found, or is not public");
+    }
+  }
+
+  private static Method find(Class<?> callbackClass, String methodName, Class<?> parameterType) 
+      throws NoSuchMethodException {
+    String key = methodName + '(' + parameterType.getName() + ')';
+    synchronized (methods) {
+      Map<String, WeakReference<Method>> byName = methods.get(callbackClass);
+      if (byName == null) {
+        byName = new HashMap<String, WeakReference<Method>>();
+        methods.put(callbackClass, byName);
+      }
+      WeakReference<Method> cached = byName.get(key);
+      Method selectMethod = cached == null ? null : cached.get();
+      if (selectMethod == null) {
+        // looked up again, if no callback used it for a while
+        selectMethod = callbackClass.getMethod(methodName, new Class[] { parameterType });
+        byName.put(key, new WeakReference<Method>(selectMethod));
+      }
+      return selectMethod;
+    }
+  }
+
+  @Override
+  public void onSelected(File selection) {
+    invoke(selection);
+  }
+
+  @Override
+  public void onSelected(File[] selection) {
+    invoke(selection);
+  }
+
+  private void invoke(Object selection) {
+    try {
+      method.invoke(target, new Object[] { selection });
+
+    } catch (IllegalAccessException iae) {
+      System.err.println(method.getName() + "() must be public");
+
+    } catch (InvocationTargetException ite) {
+      ite.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+
+/**
+ * Receives the result of {@link SelectLibrary#selectMultiple(String, MultiSelectCallback)}.
+ * 
+ * <pre>
+ * files.selectMultiple("Select files to import:", new MultiSelectCallback() {
+ *   public void onSelected(File[] selection) {
+ *     println(selection.length);
+ *   }
+ * });
+ * </pre>
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+public interface MultiSelectCallback {
+
+  /**
+   * Called on the UI thread, after the selection is made.
+   * @param selection selected files, sorted by path.
+   */
+  void onSelected(File[] selection);
+}
@@ -0,0 +1,190 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.text.CollationKey;
+import java.util.List;
+
+/**
+ * Sorted names of folder children, the table behind a {@link PagedListing}.
+ * <br>
+ * Kept as arrays, not as items: folders go first, then files, both in the 
+ * {@link DirectoryListing#sorter} order. Each entry is still read into 
+ * a short-lived {@link FileItem}, because the {@link FileItemFilter} judges items, 
+ * and gets a sort key, which lives only until the tables of all slices are merged.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class NameTable {
+
+  final String[] names;
+  final int folderCount;
+  // parallel to the names, for merging
+  private final CollationKey[] keys;
+
+  private NameTable(String[] names, CollationKey[] keys, int folderCount) {
+    this.names = names;
+    this.keys = keys;
+    this.folderCount = folderCount;
+  }
+
+  /**
+   * @param sorted items, which are sorted with {@link DirectoryListing#sorter}, 
+   * with or without "Up..".
+   */
+  static NameTable of(List<FileItem> sorted) {
+    int up = !sorted.isEmpty() && sorted.get(0).getType() == FileType.Up ? 1 : 0;
+    String[] names = new String[sorted.size() - up];
+    CollationKey[] keys = new CollationKey[names.length];
+    int folderCount = 0;
+    for (int i = 0; i < names.length; i++) {
+      FileItem item = sorted.get(i + up);
+      names[i] = item.getName();
+      keys[i] = item.getSortKey();
+      if (item.isDirectory()) {
+        folderCount++;
+      }
+    }
+    return new NameTable(names, keys, folderCount);
+  }
+
+  /**
+   * Reads and sorts <code>names[from..to)</code>, which pass the filter.
+   * @return table, or <code>null</code> if the calling thread was interrupted.
+   */
+  static NameTable read(File folder, String[] names, int from, int to, FileItemFilter filter, SortKeys keys) {
+    String[] accepted = new String[to - from];
+    CollationKey[] sortKeys = new CollationKey[to - from];
+    boolean[] folders = new boolean[to - from];
+    int size = 0;
+    Thread thread = Thread.currentThread();
+    for (int i = from; i < to; i++) {
+      if (thread.isInterrupted()) {
+        return null;
+      }
+      FileItem item = FileItem.stat(folder, names[i], null);
+      if (filter.accept(item)) {
+        accepted[size] = names[i];
+        sortKeys[size] = keys.key(names[i]);
+        folders[size] = item.isDirectory();
+        size++;
+      }
+    }
+    int[] index = new int[size];
+    for (int i = 0; i < size; i++) {
+      index[i] = i;
+    }
+    sort(index, accepted, sortKeys, folders, new int[size], 0, size);
+    String[] sorted = new String[size];
+    CollationKey[] sortedKeys = new CollationKey[size];
+    int folderCount = 0;
+    for (int i = 0; i < size; i++) {
+      sorted[i] = accepted[index[i]];
+      sortedKeys[i] = sortKeys[index[i]];
+      if (folders[index[i]]) {
+        folderCount++;
+      }
+    }
+    return new NameTable(sorted, sortedKeys, folderCount);
+  }
+
+  /**
+   * Merges two tables of the same folder, e.g. of two slices of its names.
+   * @return new table.
+   */
+  static NameTable merge(NameTable lhs, NameTable rhs) {
+    int size = lhs.names.length + rhs.names.length;
+    String[] names = new String[size];
+    CollationKey[] keys = new CollationKey[size];
+    int at = merge(lhs, 0, lhs.folderCount, rhs, 0, rhs.folderCount, names, keys, 0);
+    merge(lhs, lhs.folderCount, lhs.names.length, rhs, rhs.folderCount, rhs.names.length, names, keys, at);
+    return new NameTable(names, keys, lhs.folderCount + rhs.folderCount);
+  }
+
+  /**
+   * Merges <code>lhs[l..lTo)</code> and <code>rhs[r..rTo)</code> into the result at the given offset.
+   * @return end of the merged entries.
+   */
+  private static int merge(NameTable lhs, int l, int lTo, NameTable rhs, int r, int rTo, 
+      String[] names, CollationKey[] keys, int at) {
+    while (l < lTo || r < rTo) {
+      boolean left = r >= rTo || (l < lTo && compare(lhs.keys[l], lhs.names[l], rhs.keys[r], rhs.names[r]) <= 0);
+      NameTable from = left ? lhs : rhs;
+      int i = left ? l++ : r++;
+      names[at] = from.names[i];
+      keys[at] = from.keys[i];
+      at++;
+    }
+    return at;
+  }
+
+  /**
+   * Same order as {@link DirectoryListing#sorter} for entries of the same type.
+   */
+  static int compare(CollationKey lhsKey, String lhs, CollationKey rhsKey, String rhs) {
+    int byKey = lhsKey.compareTo(rhsKey);
+    return byKey != 0 ? byKey : lhs.compareTo(rhs);
+  }
+
+  /**
+   * Same order as {@link DirectoryListing#sorter}.
+   */
+  private static int compare(int lhs, int rhs, String[] names, CollationKey[] keys, boolean[] folders) {
+    if (folders[lhs] != folders[rhs]) {
+      return folders[lhs] ? -1 : 1;
+    }
+    return compare(keys[lhs], names[lhs], keys[rhs], names[rhs]);
+  }
+
+  /**
+   * Stable merge sort of <code>index[from..to)</code>.
+   */
+  private static void sort(int[] index, String[] names, CollationKey[] keys, boolean[] folders, 
+      int[] buffer, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    sort(index, names, keys, folders, buffer, from, middle);
+    sort(index, names, keys, folders, buffer, middle, to);
+    if (compare(index[middle - 1], index[middle], names, keys, folders) <= 0) {
+      return;
+    }
+    System.arraycopy(index, from, buffer, from, to - from);
+    int l = from;
+    int r = middle;
+    for (int i = from; i < to; i++) {
+      if (r >= to || (l < middle && compare(buffer[l], buffer[r], names, keys, folders) <= 0)) {
+        index[i] = buffer[l++];
+      } else {
+        index[i] = buffer[r++];
+      }
+    }
+  }
+}
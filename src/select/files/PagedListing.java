@@ -0,0 +1,342 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.text.CollationKey;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Listing of a huge folder, which keeps only the sorted names in the memory.
+ * <br>
+ * Rows are materialized page by page, around the rows, which are asked for:
+ * a page, which isn't loaded yet, is read on a background thread, and its rows
+ * are shown by name until then. Only a few pages are kept, the farthest one
+ * is dropped first, so the memory stays flat, however large the folder is.
+ * Pages are read one at a time, the one closest to the latest request first:
+ * pages, which were scrolled far past, are not read at all.
+ * <br>
+ * Building the listing still reads the type of every entry, see {@link NameTable}:
+ * only the listing, which is kept afterwards, is flat. Changes of a few children
+ * are patched into the names, see {@link #patch(Set, FileItemFilter, SortKeys)}.
+ * <br>
+ * {@link #get(int)} must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class PagedListing extends AbstractList<FileItem> {
+
+  static final int PAGE_SIZE = 256;
+  /**
+   * pages, which are kept in the memory
+   */
+  private static final int MAX_PAGES = 8;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-page"));
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final File folder;
+  private final String parent;
+  private final FileItem up;
+  // folders first, then files, both sorted
+  private final String[] names;
+  private final int folderCount;
+  private final FileItem[][] pages;
+  // requested pages, which are not read yet
+  private final List<Integer> queued = new ArrayList<Integer>();
+  // page, which is being read, -1 if none
+  private int reading = -1;
+  private Future<?> pending = null;
+  // page of the latest row, which was asked for
+  private int latest = 0;
+  private int generation = 0;
+  private int loadedPages = 0;
+  private Runnable onPageLoaded = null;
+
+  /**
+   * @param folder listed folder.
+   * @param table sorted names of its children, which pass the filter, see 
+   * {@link DirectoryListing#sortedTable(File, String[], int, int, FileItemFilter, boolean, ExecutorService, int)}.
+   */
+  PagedListing(File folder, NameTable table) {
+    this(folder, table.names, table.folderCount);
+  }
+
+  private PagedListing(File folder, String[] names, int folderCount) {
+    this.folder = folder;
+    this.parent = folder.getAbsolutePath();
+    File parentFolder = folder.getParentFile();
+    this.up = parentFolder == null ? null : FileItem.up(parentFolder);
+    this.names = names;
+    this.folderCount = folderCount;
+    this.pages = new FileItem[(names.length + PAGE_SIZE - 1) / PAGE_SIZE][];
+  }
+
+  /**
+   * @param onPageLoaded runs on the UI thread, when rows got their metadata.
+   */
+  void setOnPageLoaded(Runnable onPageLoaded) {
+    this.onPageLoaded = onPageLoaded;
+  }
+
+  File getFolder() {
+    return folder;
+  }
+
+  @Override
+  public int size() {
+    return names.length + (up == null ? 0 : 1);
+  }
+
+  /**
+   * @return row with the metadata, if its page is loaded, or a row with the name 
+   * and the type only. The page is requested in that case.
+   */
+  @Override
+  public FileItem get(int position) {
+    if (up != null) {
+      if (position == 0) {
+        return up;
+      }
+      position--;
+    }
+    FileItem[] page = pages[position / PAGE_SIZE];
+    if (page != null) {
+      return page[position % PAGE_SIZE];
+    }
+    request(position / PAGE_SIZE);
+    FileType type = position < folderCount ? FileType.Folder : FileType.File;
+    return FileItem.pending(names[position], type, parent);
+  }
+
+  private void request(int index) {
+    latest = index;
+    if (index != reading && !queued.contains(index)) {
+      queued.add(index);
+    }
+    readNext();
+  }
+
+  /**
+   * Reads the queued page closest to the latest request, dropping the far ones.
+   */
+  private void readNext() {
+    if (reading >= 0) {
+      return;
+    }
+    int next = -1;
+    for (Iterator<Integer> it = queued.iterator(); it.hasNext();) {
+      int index = it.next();
+      int distance = Math.abs(index - latest);
+      if (distance > MAX_PAGES / 2) {
+        // scrolled past: asked for again, if it is shown again
+        it.remove();
+      } else if (next < 0 || distance < Math.abs(next - latest)) {
+        next = index;
+      }
+    }
+    if (next < 0) {
+      return;
+    }
+    queued.remove(Integer.valueOf(next));
+    reading = next;
+    final int index = next;
+    final int from = index * PAGE_SIZE;
+    final int to = Math.min(from + PAGE_SIZE, names.length);
+    final int token = generation;
+    pending = executor.submit(new Runnable() {
+      public void run() {
+        final FileItem[] page = new FileItem[to - from];
+        Thread thread = Thread.currentThread();
+        for (int i = from; i < to; i++) {
+          if (thread.isInterrupted()) {
+            return;
+          }
+          page[i - from] = FileItem.stat(folder, names[i], null);
+        }
+        handler.post(new Runnable() {
+          public void run() {
+            if (token != generation) {
+              return;
+            }
+            reading = -1;
+            pending = null;
+            store(index, page);
+            if (onPageLoaded != null) {
+              onPageLoaded.run();
+            }
+            readNext();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Stops reading pages, e.g. when the listing is replaced, or the dialog stops.
+   * Rows, which are asked for afterwards, request their pages again.
+   */
+  void cancel() {
+    generation++;
+    queued.clear();
+    reading = -1;
+    if (pending != null) {
+      pending.cancel(true);
+      pending = null;
+    }
+  }
+
+  private void store(int index, FileItem[] page) {
+    if (pages[index] == null) {
+      loadedPages++;
+    }
+    pages[index] = page;
+    while (loadedPages > MAX_PAGES) {
+      // drop the farthest page: the visible ones are close to the latest
+      int farthest = -1;
+      for (int i = 0; i < pages.length; i++) {
+        if (pages[i] != null && (farthest < 0 || Math.abs(i - index) > Math.abs(farthest - index))) {
+          farthest = i;
+        }
+      }
+      pages[farthest] = null;
+      loadedPages--;
+    }
+  }
+
+  /**
+   * Applies changes of a few children, without reading the folder again.
+   * Only the changed children are read; rows of the new listing read their pages on demand.
+   * May be called from any thread.
+   * @param changed names of the children, which were created, deleted or modified.
+   * @param filter file-filtering rules.
+   * @param keys sort keys of the same order, as the listing was built with.
+   * @return new listing.
+   */
+  PagedListing patch(Set<String> changed, FileItemFilter filter, SortKeys keys) {
+    List<String> addedFolders = new ArrayList<String>();
+    List<String> addedFiles = new ArrayList<String>();
+    for (String name : changed) {
+      FileItem item = FileItem.statIfExists(folder, name, null);
+      if (item != null && filter.accept(item)) {
+        (item.isDirectory() ? addedFolders : addedFiles).add(name);
+      }
+    }
+    String[] kept = new String[names.length];
+    int size = 0;
+    int keptFolders = 0;
+    for (int i = 0; i < names.length; i++) {
+      if (!changed.contains(names[i])) {
+        kept[size++] = names[i];
+        if (i < folderCount) {
+          keptFolders++;
+        }
+      }
+    }
+    String[] patched = new String[size + addedFolders.size() + addedFiles.size()];
+    int at = insert(kept, 0, keptFolders, addedFolders, keys, patched, 0);
+    insert(kept, keptFolders, size, addedFiles, keys, patched, at);
+    return new PagedListing(folder, patched, keptFolders + addedFolders.size());
+  }
+
+  /**
+   * Merges the added names into sorted <code>kept[from..to)</code>. Kept names get 
+   * sort keys only where the binary search looks at them.
+   * @return end of the merged names in the result.
+   */
+  private static int insert(String[] kept, int from, int to, List<String> added, SortKeys keys, 
+      String[] result, int at) {
+    String[] names = added.toArray(new String[added.size()]);
+    CollationKey[] addedKeys = new CollationKey[names.length];
+    for (int i = 0; i < names.length; i++) {
+      addedKeys[i] = keys.key(names[i]);
+    }
+    // insertion sort: there are only a few
+    for (int i = 1; i < names.length; i++) {
+      for (int j = i; j > 0 && NameTable.compare(addedKeys[j - 1], names[j - 1], addedKeys[j], names[j]) > 0; j--) {
+        String name = names[j];
+        names[j] = names[j - 1];
+        names[j - 1] = name;
+        CollationKey key = addedKeys[j];
+        addedKeys[j] = addedKeys[j - 1];
+        addedKeys[j - 1] = key;
+      }
+    }
+    int next = from;
+    for (int i = 0; i < names.length; i++) {
+      int lo = next;
+      int hi = to;
+      while (lo < hi) {
+        int middle = (lo + hi) >>> 1;
+        if (NameTable.compare(keys.key(kept[middle]), kept[middle], addedKeys[i], names[i]) < 0) {
+          lo = middle + 1;
+        } else {
+          hi = middle;
+        }
+      }
+      System.arraycopy(kept, next, result, at, lo - next);
+      at += lo - next;
+      result[at++] = names[i];
+      next = lo;
+    }
+    System.arraycopy(kept, next, result, at, to - next);
+    return at + to - next;
+  }
+
+  /**
+   * Finds names, which contain the query. Reads metadata of the matches only.
+   * May be called from any thread.
+   * @return matches in the listing order, or <code>null</code> if the calling thread was interrupted.
+   */
+  List<FileItem> search(String query) {
+    String q = query.toLowerCase(Locale.ROOT);
+    List<FileItem> result = new ArrayList<FileItem>();
+    Thread thread = Thread.currentThread();
+    for (String name : names) {
+      if (thread.isInterrupted()) {
+        return null;
+      }
+      if (name.toLowerCase(Locale.ROOT).contains(q)) {
+        result.add(FileItem.stat(folder, name, null));
+      }
+    }
+    return result;
+  }
+}
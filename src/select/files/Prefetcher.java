@@ -0,0 +1,131 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lists folders, which the user is likely to open next, before they are opened:
+ * the parent folder and the first few visible subfolders.
+ * Listings go into the {@link ListingCache}, so opening such a folder
+ * doesn't touch the disk, apart from checking its modification time.
+ * <br>
+ * Runs on a single background thread, one folder at a time, so it never
+ * competes with the real listing for long. Huge folders are not prefetched.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class Prefetcher {
+
+  /**
+   * visible subfolders to prefetch, from the top
+   */
+  private static final int MAX_FOLDERS = 4;
+  /**
+   * folders with more entries are left for the real listing
+   */
+  private static final int MAX_ENTRIES = 2000;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-prefetch"));
+
+  private final ListingCache cache = ListingCache.shared();
+  // checked between folders: a new request drops the rest of the old one
+  private volatile int generation = 0;
+
+  /**
+   * Prefetches the parent of the folder and the first visible subfolders, 
+   * cancelling the previous request.
+   * @param folder shown folder.
+   * @param visible visible rows, top to bottom.
+   * @param filter file-filtering rules.
+   * @param filterKey identifies the filtering rules in the {@link ListingCache}.
+   * @param natural sort order, see {@link SortKeys}.
+   */
+  void prefetch(File folder, List<FileItem> visible, final FileItemFilter filter, 
+      final String filterKey, final boolean natural) {
+    final List<File> folders = new ArrayList<File>(MAX_FOLDERS + 1);
+    for (FileItem item : visible) {
+      if (folders.size() == MAX_FOLDERS) {
+        break;
+      }
+      if (item.isDirectory()) {
+        folders.add(item.getFile());
+      }
+    }
+    File parentFolder = folder.getParentFile();
+    if (parentFolder != null) {
+      folders.add(parentFolder);
+    }
+    final int token = ++generation;
+    executor.execute(new Runnable() {
+      public void run() {
+        SortKeys keys = new SortKeys(natural);
+        for (File f : folders) {
+          if (token != generation) {
+            return;
+          }
+          prefetch(f, filter, DirectoryLoader.cacheKey(f, filterKey, natural), keys);
+        }
+      }
+    });
+  }
+
+  /**
+   * Drops the prefetching requests, which didn't start yet.
+   */
+  void cancel() {
+    generation++;
+  }
+
+  /**
+   * Runs on the background thread.
+   */
+  private void prefetch(File folder, FileItemFilter filter, String key, SortKeys keys) {
+    long lastModified = folder.lastModified();
+    if (cache.contains(key, lastModified)) {
+      return;
+    }
+    String[] names = DirectoryListing.names(folder);
+    if (names.length > MAX_ENTRIES) {
+      return;
+    }
+    List<FileItem> entries = new ArrayList<FileItem>(names.length);
+    if (!DirectoryListing.entries(folder, names, 0, names.length, filter, keys, entries)) {
+      return;
+    }
+    Collections.sort(entries, DirectoryListing.sorter);
+    cache.prefetched(key, lastModified, entries);
+  }
+}
@@ -27,13 +27,21 @@
 package select.files;
 
 import android.content.Context;
+import android.graphics.Color;
+import android.text.TextUtils;
+import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup.LayoutParams;
+import android.widget.AbsListView;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
 
 /**
  * Removed all resource files. Moved all valuable constants into this file.
@@ -59,6 +67,14 @@ public final class SelectConstants {
   public static final String fs_save_file = "Create";
   public static final String fs_save_file_overwrite = "Overwrite existing file [%1$s]?";  
   public static final String fs_up_item = "Up..";
+  public static final String fs_search = "Search…";
+  public static final String fs_search_subfolders = "Subfolders";
+  public static final String fs_items = "items";
+  public static final String fs_select_files = "Select %1$d files";
+  public static final String fs_sort_name = "Name";
+  public static final String fs_sort_size = "Size";
+  public static final String fs_sort_date = "Date";
+  public static final String fs_sort_type = "Type";
   
   public static final int RID_WRAPPER_RL = 10;
   public static final int RID_CONTROLS_LL = 20;
@@ -66,11 +82,31 @@ public final class SelectConstants {
   public static final int RID_SAVE_CTLS_LL = 40;
   public static final int RID_NAME_ET = 50;
   public static final int RID_SAVE_BTN = 60;
+  public static final int RID_LOADING_PB = 70;
+  public static final int RID_ROW_NAME_TV = 80;
+  public static final int RID_ROW_PATH_TV = 90;
+  public static final int RID_SEARCH_ET = 100;
+  public static final int RID_SEARCH_LL = 110;
+  public static final int RID_SEARCH_DEEP_CB = 120;
+  public static final int RID_ROW_DETAILS_TV = 130;
+  public static final int RID_ROW_THUMB_IV = 140;
+  public static final int RID_MULTI_BTN = 150;
+  public static final int RID_SORT_BTN = 160;
   public static final int RID_ITEMS_LV = android.R.id.list;
 
   static final int COLOR_FILE = 0xFF99CC00;
   static final int COLOR_FOLDER = 0xFFFFBB33;
   static final int COLOR_UP = 0xFF33B5E5;
+  static final int COLOR_CHECKED = 0xFFAA66CC;
+
+  /**
+   * listings, which take longer than this, show a progress indicator
+   */
+  static final long LOADING_DELAY_MS = 150;
+  /**
+   * visible folders are prefetched, when the list stays still for this long
+   */
+  static final long PREFETCH_DELAY_MS = 300;
   
   /**
    * 
@@ -78,12 +114,18 @@ public final class SelectConstants {
    * 
    * <pre>
    * 10: RelativeLayout
+   *   110: LinearLayout
+   *      100: EditText
+   *      120: CheckBox
+   *      160: Button
    *    20: LinearLayout
    *       30: Button
+   *      150: Button
    *       40: LinearLayout
    *          50: EditText
    *          60: Button
    *  android.R.id.list: ListView
+   *  70: ProgressBar
    *  </pre>
    * 
    * @param context Android context for UI.
@@ -114,6 +156,13 @@ public final class SelectConstants {
         scf.setText(SelectConstants.fs_select_current_folder);
         scf.setVisibility(View.GONE);
         
+        Button bmf = new Button(context);
+        bmf.setId(RID_MULTI_BTN);
+        bmf.setLayoutParams(new LayoutParams(
+            LayoutParams.MATCH_PARENT, 
+            LayoutParams.WRAP_CONTENT));
+        bmf.setVisibility(View.GONE);
+        
         LinearLayout llsave = new LinearLayout(context);
         llsave.setId(RID_SAVE_CTLS_LL);
         RelativeLayout.LayoutParams rllsavep = new RelativeLayout.LayoutParams(
@@ -142,19 +191,146 @@ public final class SelectConstants {
         llsave.addView(bsf);
         
       ll.addView(scf);
+      ll.addView(bmf);
       ll.addView(llsave);
       
+    LinearLayout llsearch = new LinearLayout(context);
+    llsearch.setId(RID_SEARCH_LL);
+    RelativeLayout.LayoutParams rlsearch = new RelativeLayout.LayoutParams(
+        LayoutParams.MATCH_PARENT, 
+        LayoutParams.WRAP_CONTENT);
+    rlsearch.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+    llsearch.setLayoutParams(rlsearch);
+    
+      EditText search = new EditText(context);
+      search.setId(RID_SEARCH_ET);
+      search.setLayoutParams(new LinearLayout.LayoutParams(
+          0,
+          LayoutParams.WRAP_CONTENT,
+          1f));
+      search.setHint(SelectConstants.fs_search);
+      search.setSingleLine(true);
+      
+      CheckBox deep = new CheckBox(context);
+      deep.setId(RID_SEARCH_DEEP_CB);
+      deep.setLayoutParams(new LayoutParams(
+          LayoutParams.WRAP_CONTENT,
+          LayoutParams.WRAP_CONTENT));
+      deep.setText(SelectConstants.fs_search_subfolders);
+      
+      Button sort = new Button(context);
+      sort.setId(RID_SORT_BTN);
+      sort.setLayoutParams(new LayoutParams(
+          LayoutParams.WRAP_CONTENT,
+          LayoutParams.WRAP_CONTENT));
+      sort.setText(SortOrder.label(SortOrder.BY_NAME, false));
+      
+    llsearch.addView(search);
+    llsearch.addView(deep);
+    llsearch.addView(sort);
+    
     ListView lv = new ListView(context);
     lv.setId(RID_ITEMS_LV);
     RelativeLayout.LayoutParams rlvl = new RelativeLayout.LayoutParams(
         LayoutParams.MATCH_PARENT, 
         LayoutParams.MATCH_PARENT);
+    rlvl.addRule(RelativeLayout.BELOW, RID_SEARCH_LL);
     rlvl.addRule(RelativeLayout.ABOVE, RID_CONTROLS_LL);
     lv.setLayoutParams(rlvl);
     
+    ProgressBar pb = new ProgressBar(context);
+    pb.setId(RID_LOADING_PB);
+    pb.setIndeterminate(true);
+    RelativeLayout.LayoutParams rlpb = new RelativeLayout.LayoutParams(
+        LayoutParams.WRAP_CONTENT, 
+        LayoutParams.WRAP_CONTENT);
+    rlpb.addRule(RelativeLayout.CENTER_IN_PARENT);
+    pb.setLayoutParams(rlpb);
+    pb.setVisibility(View.GONE);
+    
+    rl.addView(llsearch);
     rl.addView(ll);
     rl.addView(lv);
+    rl.addView(pb);
     
     return rl;
   }
+
+  /**
+   * 
+   * This method generates UI for a single row of the list.
+   * 
+   * <pre>
+   * LinearLayout
+   *   140: ImageView
+   *    LinearLayout
+   *       80: TextView
+   *       90: TextView
+   *      130: TextView
+   *  </pre>
+   * 
+   * @param context Android context for UI.
+   * @return UI.
+   */
+  public static View generateRowViews(Context context) {
+    int padding = (int) (8 * context.getResources().getDisplayMetrics().density);
+    
+    LinearLayout row = new LinearLayout(context);
+    row.setLayoutParams(new AbsListView.LayoutParams(
+        LayoutParams.MATCH_PARENT, 
+        LayoutParams.WRAP_CONTENT));
+    row.setOrientation(LinearLayout.HORIZONTAL);
+    row.setPadding(2 * padding, padding, 2 * padding, padding);
+    
+      int size = thumbnailSize(context);
+      ImageView thumbnail = new ImageView(context);
+      thumbnail.setId(RID_ROW_THUMB_IV);
+      LinearLayout.LayoutParams llthumbnail = new LinearLayout.LayoutParams(size, size);
+      llthumbnail.rightMargin = padding;
+      thumbnail.setLayoutParams(llthumbnail);
+      thumbnail.setScaleType(ImageView.ScaleType.CENTER_CROP);
+      thumbnail.setVisibility(View.GONE);
+      
+      LinearLayout ll = new LinearLayout(context);
+      ll.setLayoutParams(new LinearLayout.LayoutParams(
+          0,
+          LayoutParams.WRAP_CONTENT,
+          1f));
+      ll.setOrientation(LinearLayout.VERTICAL);
+      
+        TextView name = new TextView(context);
+        name.setId(RID_ROW_NAME_TV);
+        name.setTextSize(TypedValue.COMPLEX_UNIT_SP, 18);
+        name.setTextColor(Color.BLACK);
+        name.setSingleLine(true);
+        
+        TextView path = new TextView(context);
+        path.setId(RID_ROW_PATH_TV);
+        path.setTextSize(TypedValue.COMPLEX_UNIT_SP, 14);
+        path.setTextColor(Color.BLACK);
+        path.setSingleLine(true);
+        path.setEllipsize(TextUtils.TruncateAt.START);
+        
+        TextView details = new TextView(context);
+        details.setId(RID_ROW_DETAILS_TV);
+        details.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+        details.setTextColor(Color.DKGRAY);
+        details.setSingleLine(true);
+        
+      ll.addView(name);
+      ll.addView(path);
+      ll.addView(details);
+      
+    row.addView(thumbnail);
+    row.addView(ll);
+    
+    return row;
+  }
+
+  /**
+   * @return side of the row thumbnails, in pixels.
+   */
+  static int thumbnailSize(Context context) {
+    return (int) (48 * context.getResources().getDisplayMetrics().density);
+  }
 }
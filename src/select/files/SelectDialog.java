@@ -27,26 +27,26 @@
 package select.files;
 
 import java.io.File;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 import processing.core.PApplet;
+import android.app.Activity;
 import android.app.Dialog;
 import android.content.Intent;
-import android.graphics.Color;
 import android.os.Bundle;
 import android.os.Environment;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
-import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.EditText;
 import android.widget.ListView;
-import android.widget.TextView;
 
 /**
  * Dialog, which provides
@@ -67,27 +67,134 @@ import android.widget.TextView;
 public class SelectDialog extends Dialog {
 
   private static final String CURRENT_PATH = "currentPath";
+  private static final String SCROLL_POSITION = "scrollPosition";
+  private static final String SCROLL_TOP = "scrollTop";
+  private static final String RETAINED_ID = "retainedId";
+  private static final String SORT_ORDER = "currentSortOrder";
+  private static final String SORT_DESCENDING = "currentSortDescending";
+  private static final String CHECKED_PATHS = "checkedPaths";
+
+  /**
+   * Listings of the dialog, which is being recreated, e.g. on rotation.
+   * Only the latest one is kept, so it never piles up.
+   */
+  private static Retained retained = null;
+  private static int retainedCount = 0;
 
   public static final String EX_PATH = "extraPath";
   public static final String EX_STYLE = "selectStyle";
   public static final String EX_PATH_RESULT = "pathResult";
   public static final String EX_CALLBACK = "selectCallback";
   public static final String EX_TITLE = "selectTitle";
+  public static final String EX_NATURAL_SORT = "naturalSort";
+  public static final String EX_PARALLEL_THRESHOLD = "parallelThreshold";
+  public static final String EX_WINDOW_THRESHOLD = "windowThreshold";
+  public static final String EX_SORT_ORDER = "sortOrder";
+  public static final String EX_SORT_DESCENDING = "sortDescending";
 
 
   private String currentPath = "";
-  private ArrayAdapter<FileItem> simpleAdapter = null;
+  private FileListAdapter simpleAdapter = null;
 
   private SelectMode selectMode = null;
-  private final Intent intent;
+  private Intent intent;
   private PApplet parent;
+  private SelectCallback callback;
+  private MultiSelectCallback multiCallback;
+  private SelectFilter.Matcher filter;
 
   private ListView listView = null;
+  private View loadingView = null;
+  private DirectoryLoader loader = null;
+  private EditText searchView = null;
+  private Button sortButton = null;
+  private TypeAheadSearch search = null;
+  private FolderWatcher watcher = null;
+  private final Prefetcher prefetcher = new Prefetcher();
+  private BackStack backStack = new BackStack();
+  // complete listing of the current folder, null while loading
+  private List<FileItem> listing = null;
+  // row to scroll to, when it is loaded, -1 to keep the scroll position
+  private int scrollPosition = -1;
+  private int scrollTop = 0;
+  // rows, which the adapter shows, before they were ordered
+  private List<FileItem> shown = null;
+  private int sortOrder = SortOrder.BY_NAME;
+  private boolean sortDescending = false;
+  private boolean naturalSort = false;
+  // shown: a prepared dialog lists its folder, but doesn't watch it
+  private boolean started = false;
   
+  /**
+   * Calls the sketch method named by the {@link #EX_CALLBACK} extra.
+   */
   public SelectDialog(PApplet parent, Intent intent) {
+    this(parent, intent, null);
+  }
+
+  /**
+   * @param callback receives the selection, {@link #EX_CALLBACK} is ignored if not <code>null</code>.
+   */
+  public SelectDialog(PApplet parent, Intent intent, SelectCallback callback) {
+    this(parent, intent, callback, null);
+  }
+
+  /**
+   * @param callback receives the selection, {@link #EX_CALLBACK} is ignored if not <code>null</code>.
+   * @param filter narrows down, which files are shown, <code>null</code> to show all.
+   */
+  public SelectDialog(PApplet parent, Intent intent, SelectCallback callback, SelectFilter filter) {
+    this(parent, intent, callback, null, filter);
+  }
+
+  /**
+   * For the {@link SelectMode#SELECT_MULTIPLE} mode.
+   * @param callback receives the selection, {@link #EX_CALLBACK} is ignored if not <code>null</code>.
+   * @param filter narrows down, which files are shown, <code>null</code> to show all.
+   */
+  public SelectDialog(PApplet parent, Intent intent, MultiSelectCallback callback, SelectFilter filter) {
+    this(parent, intent, null, callback, filter);
+  }
+
+  private SelectDialog(PApplet parent, Intent intent, SelectCallback callback, 
+      MultiSelectCallback multiCallback, SelectFilter filter) {
+    this(parent, intent, callback, multiCallback, filter == null ? null : filter.compile());
+  }
+
+  private SelectDialog(PApplet parent, Intent intent, SelectCallback callback, 
+      MultiSelectCallback multiCallback, SelectFilter.Matcher filter) {
     super(parent.getContext());
     this.parent = parent;
     this.intent = intent;
+    this.callback = callback;
+    this.multiCallback = multiCallback;
+    this.filter = filter;
+  }
+
+  /**
+   * @return what the dialog was shown for, without the views and the sketch.
+   */
+  Selection getSelection() {
+    return new Selection(intent, callback, multiCallback, filter);
+  }
+
+  /**
+   * Prepares the dialog for the next selection, keeping the views, 
+   * the adapter and the background machinery. Must not be showing.
+   * @param intent same extras, as for a new dialog.
+   * @param callback receives the selection, or <code>null</code>.
+   * @param multiCallback receives the selection in the {@link SelectMode#SELECT_MULTIPLE} mode, or <code>null</code>.
+   * @param filter narrows down, which files are shown, <code>null</code> to show all.
+   */
+  void rebind(Intent intent, SelectCallback callback, MultiSelectCallback multiCallback, SelectFilter filter) {
+    this.intent = intent;
+    this.callback = callback;
+    this.multiCallback = multiCallback;
+    this.filter = filter == null ? null : filter.compile();
+    if (listView != null) {
+      // created already, onCreate won't be called again
+      bind(null);
+    }
   }
   
   @Override
@@ -95,6 +202,7 @@ public class SelectDialog extends Dialog {
     super.onCreate(savedInstanceState);
     setContentView(SelectConstants.generateMainActivityViews(getContext()));
     listView = (ListView) findViewById(android.R.id.list);
+    loadingView = findViewById(SelectConstants.RID_LOADING_PB);
     listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
       @Override
       public void onItemClick(AdapterView parent, View v, int position, long id) {
@@ -102,112 +210,359 @@ public class SelectDialog extends Dialog {
       }
       
     });
+    listView.setOnScrollListener(new AbsListView.OnScrollListener() {
+      @Override
+      public void onScrollStateChanged(AbsListView view, int scrollState) {
+        listView.removeCallbacks(prefetchVisible);
+        if (scrollState == SCROLL_STATE_IDLE) {
+          listView.postDelayed(prefetchVisible, SelectConstants.PREFETCH_DELAY_MS);
+        }
+      }
 
+      @Override
+      public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+      }
+    });
+
+    simpleAdapter = new FileListAdapter(getContext());
+
+    loader = new DirectoryLoader(new DirectoryLoader.Listener() {
+      @Override
+      public void onListingLoaded(File folder, List<FileItem> items, boolean complete) {
+        SelectDialog.this.onListingLoaded(folder, items, complete);
+      }
+    });
+    watcher = new FolderWatcher(new FolderWatcher.Listener() {
+      @Override
+      public void onFolderChanged(File folder, Set<String> changed) {
+        SelectDialog.this.onFolderChanged(folder, changed);
+      }
+    });
+
+    search = new TypeAheadSearch(new TypeAheadSearch.Listener() {
+      @Override
+      public void onSearchResults(String query, List<FileItem> items) {
+        show(items);
+      }
+    });
+    sortButton = (Button) findViewById(SelectConstants.RID_SORT_BTN);
+    sortButton.setOnClickListener(new View.OnClickListener() {
+      @Override
+      public void onClick(View v) {
+        setSortOrder((sortOrder + 1) % SortOrder.COUNT, sortDescending);
+      }
+    });
+    sortButton.setOnLongClickListener(new View.OnLongClickListener() {
+      @Override
+      public boolean onLongClick(View v) {
+        setSortOrder(sortOrder, !sortDescending);
+        return true;
+      }
+    });
+    CheckBox deepSearch = (CheckBox) findViewById(SelectConstants.RID_SEARCH_DEEP_CB);
+    deepSearch.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+      @Override
+      public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+        search.setDeep(isChecked);
+      }
+    });
+    searchView = (EditText) findViewById(SelectConstants.RID_SEARCH_ET);
+    searchView.addTextChangedListener(new TextWatcher() {
+      @Override
+      public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+      }
+
+      @Override
+      public void onTextChanged(CharSequence s, int start, int before, int count) {
+      }
+
+      @Override
+      public void afterTextChanged(Editable s) {
+        search.setQuery(s.toString());
+      }
+    });
+
+    bind(savedInstanceState);
+
+    setListAdapter(simpleAdapter);
+  }
+
+  /**
+   * Applies the intent extras: title, mode, start folder and sorting.
+   * @param savedInstanceState state of the recreated dialog, or <code>null</code>.
+   */
+  private void bind(Bundle savedInstanceState) {
+    String savedPath = savedInstanceState == null ? null : savedInstanceState.getString(CURRENT_PATH);
     setTitle(getIntent().getStringExtra(EX_TITLE));
     currentPath = getIntent().getStringExtra(EX_PATH);
     if (currentPath == null) {
       currentPath = Environment.getExternalStorageDirectory().getAbsolutePath();
     }
-    if (savedInstanceState != null) {
-      String savedPath = savedInstanceState.getString(CURRENT_PATH);
-      if (savedPath != null) {
-        currentPath = savedPath;
-      }
+    if (savedPath != null) {
+      currentPath = savedPath;
     }
 
+    // the previous mode may have shown some of them
+    findViewById(SelectConstants.RID_CONTROLS_LL).setVisibility(View.GONE);
+    findViewById(SelectConstants.RID_FOLDER_BTN).setVisibility(View.GONE);
+    findViewById(SelectConstants.RID_MULTI_BTN).setVisibility(View.GONE);
+    findViewById(SelectConstants.RID_SAVE_CTLS_LL).setVisibility(View.GONE);
+    ((EditText) findViewById(SelectConstants.RID_NAME_ET)).setText("");
+    ((CheckBox) findViewById(SelectConstants.RID_SEARCH_DEEP_CB)).setChecked(false);
+
     selectMode = SelectMode.createSelectMode(getIntent().getIntExtra(EX_STYLE, SelectMode.SELECT_FILE), this);
+    selectMode.setFilter(filter);
+    CheckedSet checked = selectMode.getChecked();
+    String[] checkedPaths = savedPath == null ? null : savedInstanceState.getStringArray(CHECKED_PATHS);
+    if (checked != null && checkedPaths != null) {
+      // files, which the user checked before the dialog was recreated
+      checked.setPaths(checkedPaths);
+    }
     selectMode.updateUI();
-
-    File f = new File(currentPath);
-
-    simpleAdapter = new ArrayAdapter<FileItem>(getContext(), android.R.layout.simple_list_item_2, android.R.id.text1) {
-      @Override
-      public View getView(int position, View convertView, ViewGroup parent) {
-        View view = super.getView(position, convertView, parent);
-        
-        FileItem fItem = this.getItem(position);
-
-        view.setBackgroundColor(fItem.getType().getColor());
-        TextView tv1 = (TextView) view.findViewById(android.R.id.text1);
-        TextView tv2 = (TextView) view.findViewById(android.R.id.text2);
-        tv2.setText(fItem.getFullPath());
-        
-        tv1.setTextColor(Color.BLACK);
-        tv2.setTextColor(Color.BLACK);
-        
-
-        return view;
+    simpleAdapter.setChecked(selectMode.getChecked());
+
+    naturalSort = getIntent().getBooleanExtra(EX_NATURAL_SORT, false);
+    loader.setNaturalSort(naturalSort);
+    loader.setParallelThreshold(getIntent().getIntExtra(EX_PARALLEL_THRESHOLD, DirectoryLoader.PARALLEL_THRESHOLD));
+    loader.setWindowThreshold(getIntent().getIntExtra(EX_WINDOW_THRESHOLD, DirectoryLoader.WINDOW_THRESHOLD));
+    search.setNaturalSort(naturalSort);
+    search.setFilter(selectMode);
+
+    // folders of the previous selection
+    backStack = new BackStack();
+    listing = null;
+    shown = null;
+    int order = getIntent().getIntExtra(EX_SORT_ORDER, SortOrder.BY_NAME);
+    boolean descending = getIntent().getBooleanExtra(EX_SORT_DESCENDING, false);
+    if (savedPath != null) {
+      // the user may have changed it with the sort button
+      order = savedInstanceState.getInt(SORT_ORDER, order);
+      descending = savedInstanceState.getBoolean(SORT_DESCENDING, descending);
+    }
+    setSortOrder(order, descending);
+    listView.setSelection(0);
+    BackStack.Entry current = null;
+    if (savedPath != null) {
+      Retained state = retained;
+      if (state != null && state.id == savedInstanceState.getInt(RETAINED_ID, -1)) {
+        // the same process: rows are shown as they were, and revalidated.
+        // Not through the back stack, which drops huge listings
+        retained = null;
+        backStack = state.backStack;
+        current = state.current;
       }
-    };
-
-    updateCurrentList(f);
-
-    setListAdapter(simpleAdapter);
+    }
+    open(new File(currentPath), current);
+    if (savedPath != null && listing == null) {
+      // listed again: scroll, when the row shows up
+      scrollPosition = savedInstanceState.getInt(SCROLL_POSITION, 0);
+      scrollTop = savedInstanceState.getInt(SCROLL_TOP, 0);
+    }
   }
 
-  private void setListAdapter(ArrayAdapter<FileItem> simpleAdapter) {
+  private void setListAdapter(FileListAdapter simpleAdapter) {
     listView.setAdapter(simpleAdapter);
   }
 
+  /**
+   * Opens the folder. If it is the one, which the user came from, 
+   * it is restored from the {@link BackStack}, otherwise the current one is kept there.
+   */
   void updateCurrentList(File f) {
-    List<FileItem> newData = getData(f);
+    BackStack.Entry entry = backStack.popIf(f);
+    if (entry == null && listing != null && !f.getAbsolutePath().equals(currentPath)) {
+      backStack.push(new File(currentPath), listing, listView.getFirstVisiblePosition(), getScrollTop());
+    }
+    open(f, entry);
+  }
+
+  /**
+   * Shows the folder: the kept listing at once, or lists it.
+   * @param entry kept listing of the folder, or <code>null</code>.
+   */
+  private void open(File f, BackStack.Entry entry) {
+    listing = null;
     currentPath = f.getAbsolutePath();
-    simpleAdapter.clear();
-    for (FileItem item : newData) {
-      simpleAdapter.add(item);
+    // new folder, new search
+    searchView.setText("");
+    // the disk is needed for the real thing now
+    listView.removeCallbacks(prefetchVisible);
+    prefetcher.cancel();
+    // before listing: changes made while listing are patched in afterwards
+    if (started) {
+      watcher.watch(f);
+    }
+    if (entry != null) {
+      restore(f, entry);
+    } else {
+      listView.removeCallbacks(showLoading);
+      listView.postDelayed(showLoading, SelectConstants.LOADING_DELAY_MS);
+      scrollPosition = 0;
+      scrollTop = 0;
+      loader.load(f, selectMode, selectMode.listingKey());
+    }
+    StorageIndex index = StorageIndex.shared();
+    if (index != null) {
+      index.visited(f);
     }
-    simpleAdapter.notifyDataSetChanged();
   }
 
   /**
-   * 1. directories first
-   * 2. dirs/files are sorted ignoring case
+   * Shows the kept listing at once, where it was left, and revalidates it in the background.
    */
-  private static final Comparator<File> sorter = new Comparator<File>() {
-    @Override
-    public int compare(File lhs, File rhs) {
-      // file or folder
-      int lhsType = lhs.isDirectory() ? 0 : 1;
-      int rhsType = rhs.isDirectory() ? 0 : 1;
-      if (lhsType != rhsType) {
-        return lhsType - rhsType;
-      }
-      return lhs.getName().compareToIgnoreCase(rhs.getName());
+  private void restore(File folder, BackStack.Entry entry) {
+    listView.removeCallbacks(showLoading);
+    scrollPosition = -1;
+    listing = entry.items;
+    search.setListing(folder, entry.items, true);
+    show(entry.items);
+    listView.setSelectionFromTop(entry.position, entry.top);
+    listView.setVisibility(View.VISIBLE);
+    loadingView.setVisibility(View.GONE);
+    loader.revalidate(folder, entry.items, selectMode, selectMode.listingKey());
+  }
+
+  private void onListingLoaded(File folder, List<FileItem> newData, boolean complete) {
+    listView.removeCallbacks(showLoading);
+    if (complete) {
+      listing = newData;
+      listView.removeCallbacks(prefetchVisible);
+      listView.postDelayed(prefetchVisible, SelectConstants.PREFETCH_DELAY_MS);
+    }
+    search.setListing(folder, newData, complete);
+    if (!search.isActive()) {
+      show(newData);
+    }
+    if (scrollPosition >= 0 && (complete || scrollPosition < newData.size())) {
+      // the first chunk of a new folder, or the one with the saved position
+      listView.setSelectionFromTop(scrollPosition, scrollTop);
+      scrollPosition = -1;
     }
-  };
 
+    listView.setVisibility(View.VISIBLE);
+    loadingView.setVisibility(View.GONE);
+  }
 
-  private void sortData(File[] files) {
-    Arrays.sort(files, sorter);
+  /**
+   * Picks the order of the rows, and re-orders the shown ones in the memory.
+   * @param order one of the {@link SortOrder} constants.
+   */
+  void setSortOrder(int order, boolean descending) {
+    sortOrder = order;
+    sortDescending = descending;
+    updateSortButton();
+    if (shown != null) {
+      simpleAdapter.setItems(ordered(shown));
+    }
+  }
+
+  private void show(List<FileItem> items) {
+    shown = items;
+    updateSortButton();
+    simpleAdapter.setItems(ordered(items));
   }
 
-  private List<FileItem> getData(File folder) {
-    if (!folder.isDirectory()) {
-      return Collections.emptyList();
+  /**
+   * Shows the order of the rows. A paged listing can't be reordered: 
+   * the button shows the name order and is disabled, the chosen order 
+   * applies to the next folder.
+   */
+  private void updateSortButton() {
+    boolean paged = shown instanceof PagedListing;
+    sortButton.setEnabled(!paged);
+    sortButton.setText(paged ? SortOrder.label(SortOrder.BY_NAME, false) : SortOrder.label(sortOrder, sortDescending));
+  }
+
+  private List<FileItem> ordered(List<FileItem> items) {
+    // metadata of a paged listing is read page by page, it stays in the name order
+    return items instanceof PagedListing ? items : SortOrder.sort(items, sortOrder, sortDescending);
+  }
+
+  /**
+   * Applies changes made by others, e.g. a download, while the dialog is open.
+   */
+  private void onFolderChanged(File folder, Set<String> changed) {
+    if (changed.isEmpty()) {
+      // the folder itself was deleted or moved away: its rows are gone, 
+      // they don't go to the back stack
+      File ancestor = existingAncestor(folder);
+      open(ancestor, backStack.popIf(ancestor));
+    } else if (loader.isLoading()) {
+      watcher.postpone(changed);
+    } else {
+      loader.patch(folder, changed, selectMode, selectMode.listingKey());
     }
+  }
 
-    // selectMode specifies file-filtering rules
-    File[] listFiles = folder.listFiles(selectMode);
-    sortData(listFiles);
+  /**
+   * @return the closest parent of the folder, which still exists, or the storage root.
+   */
+  private static File existingAncestor(File folder) {
+    File parentFolder = folder.getAbsoluteFile().getParentFile();
+    while (parentFolder != null && !parentFolder.isDirectory()) {
+      parentFolder = parentFolder.getParentFile();
+    }
+    return parentFolder != null ? parentFolder : Environment.getExternalStorageDirectory();
+  }
 
-    List<FileItem> result = new ArrayList<FileItem>();
+  /**
+   * Prefetches the folders, which can be opened from the visible rows.
+   */
+  private final Runnable prefetchVisible = new Runnable() {
+    public void run() {
+      int first = listView.getFirstVisiblePosition();
+      int last = Math.min(listView.getLastVisiblePosition(), simpleAdapter.getCount() - 1);
+      List<FileItem> visible = new ArrayList<FileItem>(Math.max(0, last - first + 1));
+      for (int i = first; i <= last; i++) {
+        visible.add(simpleAdapter.getItem(i));
+      }
+      prefetcher.prefetch(new File(currentPath), visible, selectMode, selectMode.listingKey(), naturalSort);
+    }
+  };
 
-    // add "Up one level" item
-    File parentFolder = folder.getParentFile();
-    if (parentFolder != null) {
-      result.add(new FileItem(SelectConstants.fs_up_item, FileType.Up, parentFolder));
+  /**
+   * Replaces the list with a progress indicator. Posted with a delay, 
+   * so fast listings don't blink.
+   */
+  private final Runnable showLoading = new Runnable() {
+    public void run() {
+      listView.setVisibility(View.INVISIBLE);
+      loadingView.setVisibility(View.VISIBLE);
     }
+  };
 
-    for (int i = 0; i < listFiles.length; i++) {
-      File f = listFiles[i];
-      FileItem item = new FileItem(
-        f.getName(),
-        f.isDirectory() ? FileType.Folder : FileType.File,
-        f);
+  @Override
+  protected void onStart() {
+    super.onStart();
+    started = true;
+    File folder = new File(currentPath);
+    watcher.watch(folder);
+    if (listing != null) {
+      // listed before it was shown: changes made since then weren't watched
+      loader.revalidate(folder, listing, selectMode, selectMode.listingKey());
+    }
+  }
 
-      result.add(item);
+  @Override
+  protected void onStop() {
+    started = false;
+    listView.removeCallbacks(showLoading);
+    listView.removeCallbacks(prefetchVisible);
+    prefetcher.cancel();
+    loader.cancel();
+    search.cancel();
+    watcher.stop();
+    simpleAdapter.cancel();
+    StorageIndex index = StorageIndex.shared();
+    if (index != null) {
+      index.flushRecent();
+    }
+    Activity owner = getOwnerActivity();
+    if (owner == null || !owner.isChangingConfigurations()) {
+      // nobody is going to restore the listings
+      dropRetained();
     }
-    return result;
+    super.onStop();
   }
 
   protected void onListItemClick(ListView l, View v, int position, long id) {
@@ -217,51 +572,67 @@ public class SelectDialog extends Dialog {
   }
 
   /**
-   * TODO: Probably, should be moved inside the {@link SelectLibrary#selectImpl(String, String, File, int)} method.
-   * @param file
+   * Passes the selection to the callback.
+   * @param file selected file or folder.
+   * @param intent result, {@link #EX_CALLBACK} names the callback method,
+   * if no {@link SelectCallback} was given.
    */
   protected void onFileSelected(File file, Intent intent) {
-    if (file != null) {
-      String callbackMethod = intent.getStringExtra(SelectDialog.EX_CALLBACK);
-      selectCallback(file, callbackMethod, parent);
+    if (file == null) {
+      return;
+    }
+    if (callback != null) {
+      callback.onSelected(file);
+      return;
+    }
+    String callbackMethod = intent.getStringExtra(SelectDialog.EX_CALLBACK);
+    try {
+      MethodCallback.forMethod(parent, callbackMethod).onSelected(file);
+    } catch (IllegalArgumentException iae) {
+      System.err.println(iae.getMessage());
     }
   }
 
-  static private void selectCallback(File selectedFile, String callbackMethod, Object callbackObject) {
+  /**
+   * Passes the checked files to the callback, in the {@link SelectMode#SELECT_MULTIPLE} mode.
+   * @param files checked files.
+   * @param intent result, {@link #EX_CALLBACK} names the callback method,
+   * if no {@link MultiSelectCallback} was given.
+   */
+  protected void onFilesSelected(File[] files, Intent intent) {
+    if (multiCallback != null) {
+      multiCallback.onSelected(files);
+      return;
+    }
+    String callbackMethod = intent.getStringExtra(SelectDialog.EX_CALLBACK);
     try {
-      Class<?> callbackClass = callbackObject.getClass();
-//      System.err.println(callbackClass + " clazz");
-      Method selectMethod = callbackClass.getMethod(callbackMethod, new Class[] { File.class });
-//      System.err.println(selectMethod + " method");
-      selectMethod.invoke(callbackObject, new Object[] { selectedFile });
-
-    } catch (IllegalAccessException iae) {
-      System.err.println(callbackMethod + "() must be public");
-
-    } catch (InvocationTargetException ite) {
-      ite.printStackTrace();
-
-    } catch (NoSuchMethodException nsme) {
-      System.err.println(callbackMethod + "() could not be found");
-    }
-  }
-
-//  @Override
-//  public boolean onKeyDown(int keyCode, KeyEvent event) {
-//    if ((keyCode == KeyEvent.KEYCODE_BACK)) {
-//      File parentFile = new File(currentPath).getParentFile();
-//      if (parentFile == null) {
-//        // finita la comedia: returning to the calling activity
-//        return super.onKeyDown(keyCode, event);
-//      } else {
-//        updateCurrentList(parentFile);
-//      }
-//      return true;
-//
-//    } else {
-//      return super.onKeyDown(keyCode, event);
-//    }
-//  }
+      MethodCallback.forMultipleMethod(parent, callbackMethod).onSelected(files);
+    } catch (IllegalArgumentException iae) {
+      System.err.println(iae.getMessage());
+    }
+  }
+
+  /**
+   * Re-binds the visible rows, after a file was checked or unchecked.
+   */
+  void onCheckedChanged() {
+    simpleAdapter.notifyDataSetChanged();
+  }
+
+  /**
+   * Goes back to the folder, which the user came from, 
+   * or closes the dialog, if there is none.
+   */
+  @Override
+  public void onBackPressed() {
+    String previous = backStack.peekPath();
+    if (previous == null) {
+      // finita la comedia: returning to the sketch
+      super.onBackPressed();
+    } else {
+      updateCurrentList(new File(previous));
+    }
+  }
 
   public String getCurrentPath() {
     return currentPath;
@@ -271,60 +642,82 @@ public class SelectDialog extends Dialog {
   public Bundle onSaveInstanceState() {
     Bundle outState = super.onSaveInstanceState();
     outState.putString(CURRENT_PATH, currentPath);
+    outState.putInt(SCROLL_POSITION, listView.getFirstVisiblePosition());
+    outState.putInt(SCROLL_TOP, getScrollTop());
+    outState.putInt(SORT_ORDER, sortOrder);
+    outState.putBoolean(SORT_DESCENDING, sortDescending);
+    CheckedSet checked = selectMode.getChecked();
+    if (checked != null) {
+      outState.putStringArray(CHECKED_PATHS, checked.toPaths());
+    }
+    if (listing != null) {
+      // rows don't go into the bundle: the recreated dialog gets them from memory, 
+      // or lists the folder again, if the process is gone
+      BackStack.Entry current = new BackStack.Entry(currentPath, listing, 
+          listView.getFirstVisiblePosition(), getScrollTop());
+      retained = new Retained(++retainedCount, current, backStack);
+      outState.putInt(RETAINED_ID, retained.id);
+    }
     return outState;
   }
-  
-  public Intent getIntent() {
-    return intent;
-  }
-
-  private static class FileItem {
-    private final String name;
-    private final FileType type;
-    private final File file;
 
-    public FileItem(String name, FileType type, File file) {
-      this.name = name;
-      this.type = type;
-      this.file = file;
-    }
-
-    public String getName() {
-      return name;
-    }
+  /**
+   * Forgets the listings, which were kept for the recreated dialog.
+   */
+  static void dropRetained() {
+    retained = null;
+  }
 
-    public FileType getType() {
-      return type;
-    }
+  /**
+   * @return offset of the first visible row from the top of the list.
+   */
+  private int getScrollTop() {
+    View first = listView.getChildAt(0);
+    return first == null ? 0 : first.getTop() - listView.getPaddingTop();
+  }
 
-    public File getFile() {
-      return file;
+  /**
+   * Snapshot of the listings, which outlives the dialog.
+   */
+  private static final class Retained {
+    final int id;
+    final BackStack.Entry current;
+    final BackStack backStack;
+
+    Retained(int id, BackStack.Entry current, BackStack backStack) {
+      this.id = id;
+      this.current = current;
+      this.backStack = backStack;
     }
-
-    public String getFullPath() {
-      return file.getAbsolutePath();
+  }
+  
+  /**
+   * Extras and callbacks of a shown dialog, which outlive it, see {@link DialogRestorer}.
+   */
+  static final class Selection {
+    private final Intent intent;
+    private final SelectCallback callback;
+    private final MultiSelectCallback multiCallback;
+    private final SelectFilter.Matcher filter;
+
+    Selection(Intent intent, SelectCallback callback, MultiSelectCallback multiCallback, 
+        SelectFilter.Matcher filter) {
+      this.intent = intent;
+      this.callback = callback;
+      this.multiCallback = multiCallback;
+      this.filter = filter;
     }
 
-    @Override
-    public String toString() {
-      return getName();
+    /**
+     * Creates the same dialog for the recreated sketch.
+     * Callbacks, which are named by {@link #EX_CALLBACK}, are looked up in the new sketch.
+     */
+    SelectDialog create(PApplet parent) {
+      return new SelectDialog(parent, intent, callback, multiCallback, filter);
     }
   }
 
-  private enum FileType {
-    File(SelectConstants.COLOR_FILE), 
-    Folder(SelectConstants.COLOR_FOLDER),
-    Up(SelectConstants.COLOR_UP);
-    
-    private final int color;
-
-    FileType(int color) {
-      this.color = color;
-    }
-    
-    public int getColor() {
-      return color;
-    }
-    
+  public Intent getIntent() {
+    return intent;
   }
 }
@@ -0,0 +1,234 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import android.webkit.MimeTypeMap;
+
+/**
+ * Narrows down, which files are shown by the dialog.
+ * <br>
+ * A file is shown, if it matches any of the extensions, glob patterns or
+ * MIME types (or if none are given), and its size is within the bounds.
+ * Folders are always shown, so one can get to the files.
+ * <br>
+ * Rules are compiled once, when the dialog opens: extensions go into a hash set,
+ * globs into patterns, and files are filtered while the folder is listed,
+ * before sorting.
+ * 
+ * <pre>
+ * select.selectInput("Select a table:", callback, 
+ *     new SelectFilter().extensions("csv", "tsv").maxSize(10 * 1024 * 1024));
+ * </pre>
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+public class SelectFilter {
+
+  private final Set<String> extensions = new TreeSet<String>();
+  private final Set<String> globs = new TreeSet<String>();
+  private final Set<String> mimeTypes = new TreeSet<String>();
+  private long minSize = 0;
+  private long maxSize = Long.MAX_VALUE;
+
+  /**
+   * @param extensions file extensions without the dot, e.g. "csv". Case is ignored.
+   * @return this filter.
+   */
+  public SelectFilter extensions(String... extensions) {
+    for (String extension : extensions) {
+      String e = extension.toLowerCase(Locale.ROOT);
+      this.extensions.add(e.startsWith(".") ? e.substring(1) : e);
+    }
+    return this;
+  }
+
+  /**
+   * @param globs name patterns, where '*' stands for any text and '?' for any character, 
+   * e.g. "data-*.csv". Case is ignored.
+   * @return this filter.
+   */
+  public SelectFilter globs(String... globs) {
+    Collections.addAll(this.globs, globs);
+    return this;
+  }
+
+  /**
+   * @param mimeTypes MIME types, e.g. "text/csv", or families, e.g. "image/*".
+   * @return this filter.
+   */
+  public SelectFilter mimeTypes(String... mimeTypes) {
+    for (String mimeType : mimeTypes) {
+      this.mimeTypes.add(mimeType.toLowerCase(Locale.ROOT));
+    }
+    return this;
+  }
+
+  /**
+   * @param bytes smaller files are not shown.
+   * @return this filter.
+   */
+  public SelectFilter minSize(long bytes) {
+    this.minSize = bytes;
+    return this;
+  }
+
+  /**
+   * @param bytes larger files are not shown.
+   * @return this filter.
+   */
+  public SelectFilter maxSize(long bytes) {
+    this.maxSize = bytes;
+    return this;
+  }
+
+  /**
+   * @return matcher with the current rules, later changes don't affect it.
+   */
+  Matcher compile() {
+    return new Matcher(this);
+  }
+
+  /**
+   * Compiled rules. Thread-safe, listing threads share it.
+   */
+  static final class Matcher implements FileItemFilter {
+    private final Set<String> extensions;
+    private final Pattern[] globs;
+    // exact types, and families as "image/"
+    private final Set<String> mimeTypes;
+    private final long minSize;
+    private final long maxSize;
+    private final boolean anyName;
+    private final String signature;
+    // whether an extension has one of the MIME types; MimeTypeMap is asked once per extension
+    private final ConcurrentHashMap<String, Boolean> byMimeType = new ConcurrentHashMap<String, Boolean>();
+
+    private Matcher(SelectFilter filter) {
+      extensions = new HashSet<String>(filter.extensions);
+      List<Pattern> patterns = new ArrayList<Pattern>(filter.globs.size());
+      for (String glob : filter.globs) {
+        patterns.add(Pattern.compile(toRegex(glob), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+      }
+      globs = patterns.toArray(new Pattern[patterns.size()]);
+      mimeTypes = new HashSet<String>();
+      for (String mimeType : filter.mimeTypes) {
+        mimeTypes.add(mimeType.endsWith("/*") ? mimeType.substring(0, mimeType.length() - 1) : mimeType);
+      }
+      minSize = filter.minSize;
+      maxSize = filter.maxSize;
+      anyName = extensions.isEmpty() && globs.length == 0 && mimeTypes.isEmpty();
+      // sorted sets: the same rules always give the same signature
+      signature = filter.extensions + "|" + filter.globs + "|" + filter.mimeTypes 
+          + "|" + minSize + ".." + maxSize;
+    }
+
+    /**
+     * @return identifies the rules in the {@link ListingCache}.
+     */
+    String signature() {
+      return signature;
+    }
+
+    @Override
+    public boolean accept(FileItem item) {
+      if (item.isDirectory()) {
+        return true;
+      }
+      long size = item.getSize();
+      if (size < minSize || size > maxSize) {
+        return false;
+      }
+      return anyName || matchesName(item.getName());
+    }
+
+    private boolean matchesName(String name) {
+      String extension = extension(name);
+      if (extensions.contains(extension)) {
+        return true;
+      }
+      for (Pattern glob : globs) {
+        if (glob.matcher(name).matches()) {
+          return true;
+        }
+      }
+      return !mimeTypes.isEmpty() && matchesMimeType(extension);
+    }
+
+    private boolean matchesMimeType(String extension) {
+      Boolean known = byMimeType.get(extension);
+      if (known == null) {
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        boolean matches = false;
+        if (mimeType != null) {
+          int slash = mimeType.indexOf('/');
+          matches = mimeTypes.contains(mimeType) 
+              || (slash > 0 && mimeTypes.contains(mimeType.substring(0, slash + 1)));
+        }
+        known = matches;
+        byMimeType.put(extension, known);
+      }
+      return known;
+    }
+
+    private static String extension(String name) {
+      int dot = name.lastIndexOf('.');
+      return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static String toRegex(String glob) {
+      StringBuilder regex = new StringBuilder();
+      StringBuilder literal = new StringBuilder();
+      for (int i = 0; i < glob.length(); i++) {
+        char c = glob.charAt(i);
+        if (c == '*' || c == '?') {
+          if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+          }
+          regex.append(c == '*' ? ".*" : ".");
+        } else {
+          literal.append(c);
+        }
+      }
+      if (literal.length() > 0) {
+        regex.append(Pattern.quote(literal.toString()));
+      }
+      return regex.toString();
+    }
+  }
+}
@@ -27,11 +27,12 @@
 package select.files;
 
 import java.io.File;
+import java.util.List;
 
 import processing.core.PApplet;
 import android.app.Activity;
-import android.app.Dialog;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Environment;
 
 /**
@@ -45,10 +46,29 @@ import android.os.Environment;
  *
  */
 public class SelectLibrary {
+  private static final String STORAGE_INDEX_FILE = "select-files.index";
+
   private PApplet parent;
+  private boolean naturalSort = false;
+  private int parallelThreshold = DirectoryLoader.PARALLEL_THRESHOLD;
+  private int windowThreshold = DirectoryLoader.WINDOW_THRESHOLD;
+  private int sortOrder = SortOrder.BY_NAME;
+  private boolean sortDescending = false;
+  private boolean reuseDialog = false;
+  // kept between selections, if reuseDialog is on
+  private SelectDialog warmDialog = null;
   
   public SelectLibrary(PApplet parent) {
     this.parent = parent;
+    final Activity activity = parent.getActivity();
+    if (activity != null) {
+      activity.runOnUiThread(new Runnable() {
+        public void run() {
+          // the dialog, which was showing before the activity was recreated
+          DialogRestorer.restore(SelectLibrary.this.parent);
+        }
+      });
+    }
   }
 
   /**
@@ -71,6 +91,41 @@ public class SelectLibrary {
     selectImpl(prompt, callback, null, SelectMode.SELECT_FILE);
   }
 
+  /**
+   * Same as {@link #selectInput(String, String)}, but calls the callback 
+   * object directly, without reflection.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   */
+  public void selectInput(String prompt, SelectCallback callback) {
+    selectImpl(prompt, callback, null, SelectMode.SELECT_FILE);
+  }
+
+  /**
+   * Same as {@link #selectInput(String, String)}, but shows only the files, 
+   * which pass the filter.
+   *
+   * @param prompt message to the user
+   * @param callback name of the method to be called when the selection is made
+   * @param filter e.g. <code>new SelectFilter().extensions("csv")</code>
+   */
+  public void selectInput(String prompt, String callback, SelectFilter filter) {
+    selectImpl(prompt, callback, null, null, filter, null, SelectMode.SELECT_FILE);
+  }
+
+  /**
+   * Same as {@link #selectInput(String, SelectCallback)}, but shows only the files, 
+   * which pass the filter.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   * @param filter e.g. <code>new SelectFilter().extensions("csv")</code>
+   */
+  public void selectInput(String prompt, SelectCallback callback, SelectFilter filter) {
+    selectImpl(prompt, null, callback, null, filter, null, SelectMode.SELECT_FILE);
+  }
+
   /**
    * See selectInput() for details.
    *
@@ -80,6 +135,16 @@ public class SelectLibrary {
   public void selectOutput(String prompt, String callback) {
     selectImpl(prompt, callback, null, SelectMode.SAVE_FILE);
   }
+
+  /**
+   * See selectInput() for details.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   */
+  public void selectOutput(String prompt, SelectCallback callback) {
+    selectImpl(prompt, callback, null, SelectMode.SAVE_FILE);
+  }
   
   /**
    * See selectInput() for details.
@@ -91,8 +156,205 @@ public class SelectLibrary {
     selectImpl(prompt, callback, null, SelectMode.SELECT_FOLDER);
   }
 
+  /**
+   * See selectInput() for details.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   */
+  public void selectFolder(String prompt, SelectCallback callback) {
+    selectImpl(prompt, callback, null, SelectMode.SELECT_FOLDER);
+  }
+
+  /**
+   * Open file chooser dialog to select several files at once.
+   * Files are checked and unchecked by tapping them, also in different folders.
+   * After the selection is made, the checked files are passed to the 
+   * 'callback' function at once, as a File[] sorted by path.
+   *
+   * @param prompt message to the user
+   * @param callback name of the method, which takes a File[], to be called when the selection is made
+   */
+  public void selectMultiple(String prompt, String callback) {
+    selectImpl(prompt, callback, null, null, null, null, SelectMode.SELECT_MULTIPLE);
+  }
+
+  /**
+   * See selectMultiple() for details.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   */
+  public void selectMultiple(String prompt, MultiSelectCallback callback) {
+    selectImpl(prompt, null, null, callback, null, null, SelectMode.SELECT_MULTIPLE);
+  }
+
+  /**
+   * See selectMultiple() for details.
+   *
+   * @param prompt message to the user
+   * @param callback receives the selection
+   * @param filter narrows down, which files are shown
+   */
+  public void selectMultiple(String prompt, MultiSelectCallback callback, SelectFilter filter) {
+    selectImpl(prompt, null, null, callback, filter, null, SelectMode.SELECT_MULTIPLE);
+  }
+
+  /**
+   * Sort numbers in file names by their value: "img2" goes before "img10".
+   * Off by default.
+   * 
+   * @param naturalSort true to sort numbers by value
+   */
+  public void setNaturalSort(boolean naturalSort) {
+    this.naturalSort = naturalSort;
+  }
+
+  /**
+   * Order of the rows, when the dialog opens. The user can change it 
+   * with the sort button: a click picks the next order, a long click reverses it.
+   * Folders always go above files.
+   * 
+   * @param order one of {@link SortOrder#BY_NAME}, {@link SortOrder#BY_SIZE}, 
+   * {@link SortOrder#BY_DATE}, {@link SortOrder#BY_TYPE}
+   * @param descending true to start with the largest, newest, or last in the alphabet
+   */
+  public void setSortOrder(int order, boolean descending) {
+    if (order < 0 || order >= SortOrder.COUNT) {
+      throw new IllegalArgumentException("Only BY_NAME, BY_SIZE, BY_DATE, BY_TYPE allowed");
+    }
+    this.sortOrder = order;
+    this.sortDescending = descending;
+  }
+
+  /**
+   * Folders with more entries than this are listed and sorted by all CPU cores.
+   * Smaller folders are listed by a single background thread.
+   * 
+   * @param entries number of entries, 4096 by default
+   */
+  public void setParallelThreshold(int entries) {
+    this.parallelThreshold = entries;
+  }
+
+  /**
+   * Folders with at least this many entries keep only the sorted names 
+   * in the memory; size, date and type are read for the rows around 
+   * the visible ones only, page by page.
+   * 
+   * @param entries number of entries, 20000 by default
+   */
+  public void setWindowThreshold(int entries) {
+    this.windowThreshold = entries;
+  }
+
+  /**
+   * Folder listings are cached between dialogs, see {@link #clearListingCache()}.
+   * @return how many times a folder was shown without listing it again.
+   */
+  public int getListingCacheHits() {
+    return ListingCache.shared().getHits();
+  }
+
+  /**
+   * @return how many times a folder had to be listed from the disk.
+   */
+  public int getListingCacheMisses() {
+    return ListingCache.shared().getMisses();
+  }
+
+  /**
+   * When a folder is shown, its parent and the visible subfolders are listed
+   * in the background and cached, so opening them is instant.
+   * @return how many folders were listed ahead of time.
+   */
+  public int getPrefetchCount() {
+    return ListingCache.shared().getPrefetches();
+  }
+
+  /**
+   * @return how many of the folders listed ahead of time were opened afterwards.
+   */
+  public int getPrefetchHits() {
+    return ListingCache.shared().getPrefetchHits();
+  }
+
+  /**
+   * Forgets all cached folder listings.
+   */
+  public void clearListingCache() {
+    ListingCache.shared().clear();
+  }
+
+  /**
+   * Keeps one dialog with all its views between selections, so opening it
+   * again only re-binds the mode, the title and the start folder.
+   * The dialog is prepared right away, in the background of the sketch 
+   * (on Android 5.0 and later; before that, on the first selection). Off by default.
+   * 
+   * @param reuse true to keep the dialog
+   */
+  public void setReuseDialog(boolean reuse) {
+    this.reuseDialog = reuse;
+    final Activity activity = parent.getActivity();
+    if (activity == null) {
+      return;
+    }
+    activity.runOnUiThread(new Runnable() {
+      public void run() {
+        if (!reuseDialog) {
+          warmDialog = null;
+        } else if (warmDialog == null) {
+          Intent i = new Intent();
+          i.putExtra(SelectDialog.EX_PATH, Environment.getExternalStorageDirectory().getAbsolutePath());
+          i.putExtra(SelectDialog.EX_NATURAL_SORT, naturalSort);
+          warmDialog = new SelectDialog(parent, i, (SelectCallback) null, null);
+          if (Build.VERSION.SDK_INT >= 21) {
+            // builds the views, and lists the default folder into the cache;
+            // older devices build them on the first show, and reuse them afterwards
+            warmDialog.create();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Keeps an index of the external storage in the app private storage,
+   * so folders and search results show up instantly, even right after 
+   * the app start. The index is refreshed in the background on every start,
+   * only changed folders are listed again. Off by default.
+   * 
+   * @param enabled true to use the index
+   */
+  public void setStorageIndex(boolean enabled) {
+    Activity activity = parent.getActivity();
+    if (enabled && activity != null) {
+      StorageIndex.enable(new File(activity.getFilesDir(), STORAGE_INDEX_FILE), 
+          Environment.getExternalStorageDirectory());
+    } else {
+      StorageIndex.disable();
+    }
+  }
+
+  /**
+   * Needs the storage index, see {@link #setStorageIndex(boolean)}.
+   * @return recently opened folders, the latest first. Empty, if the index is off.
+   */
+  public File[] getRecentFolders() {
+    StorageIndex index = StorageIndex.shared();
+    if (index == null) {
+      return new File[0];
+    }
+    List<File> recent = index.getRecentFolders();
+    return recent.toArray(new File[recent.size()]);
+  }
+
   /**
    * Starts open/save dialog.
+   * The callback method is looked up, when the selection is made, 
+   * once per sketch class and method name. A missing method is reported 
+   * then, on the error stream, as before.
    *  
    * @param prompt
    * @param callbackMethod
@@ -103,6 +365,31 @@ public class SelectLibrary {
                                    final String callbackMethod,
                                    File defaultSelection,
                                    final int mode) {
+    selectImpl(prompt, callbackMethod, null, null, null, defaultSelection, mode);
+  }
+
+  /**
+   * Starts open/save dialog.
+   *  
+   * @param prompt
+   * @param callback
+   * @param defaultSelection
+   * @param mode
+   */
+  protected void selectImpl(final String prompt,
+                                   final SelectCallback callback,
+                                   File defaultSelection,
+                                   final int mode) {
+    selectImpl(prompt, null, callback, null, null, defaultSelection, mode);
+  }
+
+  private void selectImpl(final String prompt,
+                          final String callbackMethod,
+                          final SelectCallback callback,
+                          final MultiSelectCallback multiCallback,
+                          final SelectFilter filter,
+                          File defaultSelection,
+                          final int mode) {
     if (defaultSelection == null) {
       defaultSelection = Environment.getExternalStorageDirectory();
     }
@@ -112,13 +399,31 @@ public class SelectLibrary {
     i.putExtra(SelectDialog.EX_STYLE, mode);
     i.putExtra(SelectDialog.EX_CALLBACK, callbackMethod);
     i.putExtra(SelectDialog.EX_TITLE, prompt);
+    i.putExtra(SelectDialog.EX_NATURAL_SORT, naturalSort);
+    i.putExtra(SelectDialog.EX_PARALLEL_THRESHOLD, parallelThreshold);
+    i.putExtra(SelectDialog.EX_WINDOW_THRESHOLD, windowThreshold);
+    i.putExtra(SelectDialog.EX_SORT_ORDER, sortOrder);
+    i.putExtra(SelectDialog.EX_SORT_DESCENDING, sortDescending);
     
     
-    Activity activity = parent.getActivity();
+    final Activity activity = parent.getActivity();
     if (activity != null) {
       activity.runOnUiThread(new Runnable() {
           public void run() {
-            Dialog dlg = new SelectDialog(parent, i);
+            SelectDialog dlg;
+            if (reuseDialog && warmDialog != null && !warmDialog.isShowing()) {
+              dlg = warmDialog;
+              dlg.rebind(i, callback, multiCallback, filter);
+            } else {
+              dlg = multiCallback != null
+                  ? new SelectDialog(parent, i, multiCallback, filter)
+                  : new SelectDialog(parent, i, callback, filter);
+              if (reuseDialog) {
+                warmDialog = dlg;
+              }
+            }
+            dlg.setOwnerActivity(activity);
+            DialogRestorer.track(activity, dlg);
             dlg.show();//startActivityForResult(i, RESULT_SELECT);
           }
       });
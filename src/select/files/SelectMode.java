@@ -44,11 +44,12 @@ import android.widget.EditText;
  * @author ostap.andrusiv
  *
  */
-public abstract class SelectMode implements FileFilter {
+public abstract class SelectMode implements FileFilter, FileItemFilter {
 
   public static final int SELECT_FILE = 1;
   public static final int SELECT_FOLDER = 2;
   public static final int SAVE_FILE = 4;
+  public static final int SELECT_MULTIPLE = 8;
   
   
   /**
@@ -56,6 +57,20 @@ public abstract class SelectMode implements FileFilter {
    */
   abstract void updateUI();
 
+  /**
+   * Same rules as {@link #accept(File)}, but reads the metadata snapshot
+   * of the item instead of the file system. Files must pass the 
+   * {@link SelectFilter}, too, if there is one.
+   */
+  public boolean accept(FileItem item) {
+    return acceptItem(item) && (filter == null || filter.accept(item));
+  }
+
+  /**
+   * Rules of the specific mode for {@link #accept(FileItem)}.
+   */
+  abstract boolean acceptItem(FileItem item);
+
   /**
    * Checks, if the proposed file can be selected.
    * @param pathname file to check.
@@ -72,6 +87,8 @@ public abstract class SelectMode implements FileFilter {
   abstract void onItemClickedImpl(File pathname);
 
   SelectDialog ui;
+  private int type;
+  private SelectFilter.Matcher filter = null;
 
   /**
    * Create an instance of {@link SelectMode} for the specific activity.
@@ -80,16 +97,56 @@ public abstract class SelectMode implements FileFilter {
    * @return selectMode
    */
   static SelectMode createSelectMode(int type, SelectDialog activity) {
+    SelectMode mode;
     switch (type) {
     case SELECT_FILE:
-      return new OPEN_FILE(activity);
+      mode = new OPEN_FILE(activity);
+      break;
     case SELECT_FOLDER:
-      return new OPEN_FOLDER(activity);
+      mode = new OPEN_FOLDER(activity);
+      break;
     case SAVE_FILE:
-      return new SAVE_FILE(activity);
+      mode = new SAVE_FILE(activity);
+      break;
+    case SELECT_MULTIPLE:
+      mode = new SELECT_FILES(activity);
+      break;
     default:
-      throw new IllegalArgumentException("Only OPEN_FILE, OPEN_FOLDER, SAVE_FILE allowed");
+      throw new IllegalArgumentException("Only OPEN_FILE, OPEN_FOLDER, SAVE_FILE, SELECT_MULTIPLE allowed");
+    }
+    mode.type = type;
+    return mode;
+  }
+
+  /**
+   * @return one of SELECT_FILE, SELECT_FOLDER, SAVE_FILE, SELECT_MULTIPLE.
+   */
+  int getType() {
+    return type;
+  }
+
+  /**
+   * @return checked files, or <code>null</code>, if the mode selects a single file.
+   */
+  CheckedSet getChecked() {
+    return null;
+  }
+
+  /**
+   * @param filter additional rules for files, <code>null</code> for none.
+   */
+  void setFilter(SelectFilter.Matcher filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * @return key, which identifies the filtering rules of this mode in the {@link ListingCache}.
+   */
+  String listingKey() {
+    if (filter == null) {
+      return String.valueOf(type);
     }
+    return type + ":" + filter.signature();
   }
 
   private static final String ACCEPTABLE = "acpt";
@@ -156,6 +213,11 @@ public abstract class SelectMode implements FileFilter {
       return true;
     }
 
+    @Override
+    boolean acceptItem(FileItem item) {
+      return true;
+    }
+
     @Override
     void onItemClickedImpl(File f) {
       if (f.isDirectory()) {
@@ -186,6 +248,11 @@ public abstract class SelectMode implements FileFilter {
       return pathname.isDirectory();
     }
 
+    @Override
+    boolean acceptItem(FileItem item) {
+      return item.isDirectory();
+    }
+
     @Override
     void onItemClickedImpl(File f) {
       ui.updateCurrentList(f);
@@ -219,6 +286,11 @@ public abstract class SelectMode implements FileFilter {
       return true;
     }
 
+    @Override
+    boolean acceptItem(FileItem item) {
+      return true;
+    }
+
     @Override
     public String isOk(final File file) {
       if (!file.getParentFile().canWrite()) {
@@ -277,4 +349,74 @@ public abstract class SelectMode implements FileFilter {
       additionalControls.setVisibility(View.VISIBLE);
     }
   }
+
+  private static class SELECT_FILES extends SelectMode {
+    // survives navigation: files can be checked in many folders
+    private final CheckedSet checked = new CheckedSet();
+
+    public SELECT_FILES(SelectDialog activity) {
+      this.ui = activity;
+    }
+
+    @Override
+    public String isOk(File file) {
+      return (file.canRead() && file.isFile()) ? ACCEPTABLE : SelectConstants.fs_unacceptable;
+    }
+
+    @Override
+    public boolean accept(File pathname) {
+      // show all files
+      return true;
+    }
+
+    @Override
+    boolean acceptItem(FileItem item) {
+      return true;
+    }
+
+    @Override
+    CheckedSet getChecked() {
+      return checked;
+    }
+
+    @Override
+    void onItemClickedImpl(File f) {
+      if (f.isDirectory()) {
+        ui.updateCurrentList(f);
+        return;
+      }
+      String isOkMessage = isOk(f);
+      if (ACCEPTABLE.equals(isOkMessage)) {
+        checked.toggle(f.getAbsolutePath());
+        ui.onCheckedChanged();
+        updateCount();
+      } else {
+        sayToUser(SelectConstants.fs_warning, isOkMessage, f.getName());
+      }
+    }
+
+    private void updateCount() {
+      Button selectFiles = (Button) ui.findViewById(SelectConstants.RID_MULTI_BTN);
+      selectFiles.setText(String.format(SelectConstants.fs_select_files, checked.size()));
+      selectFiles.setEnabled(checked.size() > 0);
+    }
+
+    @Override
+    void updateUI() {
+      Button selectFiles = (Button) ui.findViewById(SelectConstants.RID_MULTI_BTN);
+      selectFiles.setOnClickListener(new View.OnClickListener() {
+        public void onClick(View v) {
+          Intent result = new Intent();
+          result.putExtra(SelectDialog.EX_CALLBACK, ui.getIntent().getExtras().getString(SelectDialog.EX_CALLBACK));
+          ui.onFilesSelected(checked.toFiles(), result);
+          ui.dismiss();
+        }
+      });
+      updateCount();
+
+      View controls = ui.findViewById(SelectConstants.RID_CONTROLS_LL);
+      controls.setVisibility(View.VISIBLE);
+      selectFiles.setVisibility(View.VISIBLE);
+    }
+  }
 }
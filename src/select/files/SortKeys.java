@@ -0,0 +1,104 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+/**
+ * Creates sort keys for file names, once per {@link FileItem}, 
+ * so sorting compares precomputed keys only.
+ * <br>
+ * Keys follow the rules of the default locale and ignore case.
+ * Natural order compares numbers by their value: "img2" goes before "img10".
+ * <br>
+ * Not thread-safe, every listing thread needs its own instance.
+ * Keys of instances with the same order can be compared with each other:
+ * their collators are copies of the same locale rules.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class SortKeys {
+
+  /**
+   * numbers are padded with zeros up to this width in natural order
+   */
+  private static final int NUMBER_WIDTH = 20;
+
+  private final Collator collator;
+  private final boolean natural;
+
+  SortKeys(boolean natural) {
+    this.natural = natural;
+    this.collator = Collator.getInstance();
+    // ignore case, but not accents
+    collator.setStrength(Collator.SECONDARY);
+    collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+  }
+
+  boolean isNatural() {
+    return natural;
+  }
+
+  CollationKey key(String name) {
+    return collator.getCollationKey(natural ? padNumbers(name) : name);
+  }
+
+  /**
+   * "img2.png" becomes "img00000000000000000002.png".
+   */
+  static String padNumbers(String name) {
+    StringBuilder result = null;
+    int length = name.length();
+    int i = 0;
+    while (i < length) {
+      if (!Character.isDigit(name.charAt(i))) {
+        i++;
+        continue;
+      }
+      int end = i + 1;
+      while (end < length && Character.isDigit(name.charAt(end))) {
+        end++;
+      }
+      if (result == null) {
+        result = new StringBuilder(length + NUMBER_WIDTH);
+        result.append(name, 0, i);
+      }
+      for (int pad = end - i; pad < NUMBER_WIDTH; pad++) {
+        result.append('0');
+      }
+      result.append(name, i, end);
+      i = end;
+      // copy everything up to the next number
+      while (i < length && !Character.isDigit(name.charAt(i))) {
+        result.append(name.charAt(i++));
+      }
+    }
+    return result == null ? name : result.toString();
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Orders of the listing, which can be picked by the user, or by the sketch, see 
+ * {@link SelectLibrary#setSortOrder(int, boolean)}.
+ * <br>
+ * Folders are listed and cached in the name order only. Other orders are applied
+ * to the listing in the memory: size and time were read by the single <code>stat</code>
+ * of every {@link FileItem}, so switching the order never touches the disk.
+ * Rows are ordered by <code>long</code> keys, copied into an array once per sort;
+ * rows with equal keys keep the name order. Folders stay above files.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+public final class SortOrder {
+
+  public static final int BY_NAME = 0;
+  public static final int BY_SIZE = 1;
+  public static final int BY_DATE = 2;
+  public static final int BY_TYPE = 3;
+
+  /**
+   * number of orders, for cycling through them
+   */
+  static final int COUNT = 4;
+
+  private SortOrder() {
+  }
+
+  /**
+   * @return name of the order, as shown on the sort button.
+   */
+  static String label(int order, boolean descending) {
+    String name;
+    switch (order) {
+    case BY_SIZE:
+      name = SelectConstants.fs_sort_size;
+      break;
+    case BY_DATE:
+      name = SelectConstants.fs_sort_date;
+      break;
+    case BY_TYPE:
+      name = SelectConstants.fs_sort_type;
+      break;
+    default:
+      name = SelectConstants.fs_sort_name;
+    }
+    return name + (descending ? " ↓" : " ↑");
+  }
+
+  /**
+   * @param byName listing in the name order, "Up.." item goes first, if any.
+   * @return the same listing, if the order is by name ascending, a reordered copy otherwise.
+   */
+  static List<FileItem> sort(List<FileItem> byName, int order, boolean descending) {
+    if (order == BY_NAME && !descending) {
+      return byName;
+    }
+    int size = byName.size();
+    FileItem[] items = byName.toArray(new FileItem[size]);
+    long[] keys = new long[size];
+    if (order == BY_TYPE) {
+      typeKeys(items, keys);
+    }
+    int[] index = new int[size];
+    for (int i = 0; i < size; i++) {
+      FileItem item = items[i];
+      long key;
+      switch (order) {
+      case BY_SIZE:
+        // sizes of folders mean nothing to the user, they keep the name order
+        key = item.isDirectory() ? 0 : item.getSize();
+        break;
+      case BY_DATE:
+        key = item.getLastModified();
+        break;
+      case BY_TYPE:
+        key = keys[i];
+        break;
+      default:
+        // position in the name order
+        key = i;
+      }
+      if (descending) {
+        key = -key;
+      }
+      // folders first, "Up.." above them: sizes and times are far below 2^56
+      int group = item.getType() == FileType.Up ? 0 : item.isDirectory() ? 1 : 2;
+      keys[i] = ((long) group << 56) + key;
+      index[i] = i;
+    }
+    sort(index, keys, new int[size], 0, size);
+    List<FileItem> result = new ArrayList<FileItem>(size);
+    for (int i : index) {
+      result.add(items[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Ranks the extensions in the name order, for files; folders get 0.
+   */
+  private static void typeKeys(FileItem[] items, long[] keys) {
+    Map<String, String> extensions = new HashMap<String, String>();
+    List<String> distinct = new ArrayList<String>();
+    String[] ofItem = new String[items.length];
+    for (int i = 0; i < items.length; i++) {
+      FileItem item = items[i];
+      if (item.getType() != FileType.File) {
+        continue;
+      }
+      String name = item.getName();
+      int dot = name.lastIndexOf('.');
+      String extension = dot <= 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+      String known = extensions.get(extension);
+      if (known == null) {
+        known = extension;
+        extensions.put(known, known);
+        distinct.add(known);
+      }
+      ofItem[i] = known;
+    }
+    String[] sorted = distinct.toArray(new String[distinct.size()]);
+    Arrays.sort(sorted);
+    Map<String, Integer> ranks = new HashMap<String, Integer>();
+    for (int r = 0; r < sorted.length; r++) {
+      // files without an extension go first
+      ranks.put(sorted[r], r + 1);
+    }
+    for (int i = 0; i < items.length; i++) {
+      keys[i] = ofItem[i] == null ? 0 : ranks.get(ofItem[i]);
+    }
+  }
+
+  /**
+   * Stable merge sort of <code>index[from..to)</code> by the keys.
+   */
+  private static void sort(int[] index, long[] keys, int[] buffer, int from, int to) {
+    if (to - from < 2) {
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    sort(index, keys, buffer, from, middle);
+    sort(index, keys, buffer, middle, to);
+    if (keys[index[middle - 1]] <= keys[index[middle]]) {
+      // already in order
+      return;
+    }
+    System.arraycopy(index, from, buffer, from, to - from);
+    int l = from;
+    int r = middle;
+    for (int i = from; i < to; i++) {
+      if (r >= to || (l < middle && keys[buffer[l]] <= keys[buffer[r]])) {
+        index[i] = buffer[l++];
+      } else {
+        index[i] = buffer[r++];
+      }
+    }
+  }
+}
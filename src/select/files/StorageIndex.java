@@ -0,0 +1,489 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Persistent index of every folder under the storage root: child names, 
+ * types, sizes and modification times, kept in a compact file in the 
+ * app private storage.
+ * <br>
+ * The index is loaded and refreshed on a background thread. Refreshing walks
+ * the tree again, but re-lists only the folders, which modification time 
+ * changed since the last run, so it is cheap when little has changed.
+ * Until it finishes, the previous state of the index is used.
+ * <br>
+ * Folders, which are still up to date, are shown without waiting for the listing,
+ * and the deep search is answered from the memory, right after app start.
+ * Files, which are edited in place, don't change the time of their folder, 
+ * so shown folders are always listed again, see {@link DirectoryLoader}.
+ * The index also remembers recently opened folders, in a small file of their own.
+ * Disabled by default, see {@link SelectLibrary#setStorageIndex(boolean)}. Thread-safe.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class StorageIndex {
+
+  private static final int MAGIC = 0x53464958; // "SFIX"
+  private static final int VERSION = 1;
+  private static final int MAX_RECENT = 8;
+  /**
+   * recent folders are written, when the user stays in a folder for this long, 
+   * or leaves the dialog
+   */
+  private static final long RECENT_SAVE_DELAY_MS = 3000;
+
+  private static final byte TYPE_FILE = 0;
+  private static final byte TYPE_FOLDER = 1;
+  // link to a folder: shown as a folder, never walked into
+  private static final byte TYPE_FOLDER_LINK = 2;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-index"));
+
+  private static volatile StorageIndex shared = null;
+
+  /**
+   * @return index, which is in use, or <code>null</code> if it is disabled.
+   */
+  static StorageIndex shared() {
+    return shared;
+  }
+
+  /**
+   * Enables the index: loads it from the file and refreshes it in the background.
+   * @param file where the index is kept.
+   * @param root top folder of the index.
+   */
+  static synchronized void enable(File file, File root) {
+    if (shared != null && shared.file.equals(file) && shared.root.equals(root)) {
+      return;
+    }
+    final StorageIndex index = new StorageIndex(file, root);
+    shared = index;
+    executor.execute(new Runnable() {
+      public void run() {
+        index.load();
+        index.refresh();
+      }
+    });
+  }
+
+  /**
+   * Disables the index. The file is kept for the next time.
+   */
+  static synchronized void disable() {
+    shared = null;
+  }
+
+  /**
+   * Children of one folder, as arrays: one object per folder, not per child.
+   */
+  private static class Folder {
+    final long lastModified;
+    final String[] names;
+    final byte[] types;
+    final long[] sizes;
+    final long[] mtimes;
+
+    Folder(long lastModified, int count) {
+      this.lastModified = lastModified;
+      this.names = new String[count];
+      this.types = new byte[count];
+      this.sizes = new long[count];
+      this.mtimes = new long[count];
+    }
+
+    FileItem item(String path, int i, SortKeys keys) {
+      FileType type = types[i] == TYPE_FILE ? FileType.File : FileType.Folder;
+      return new FileItem(names[i], type, path, sizes[i], mtimes[i], keys.key(names[i]));
+    }
+  }
+
+  private final File file;
+  private final File recentFile;
+  private final File root;
+  // replaced as a whole by refresh, never modified afterwards
+  private volatile Map<String, Folder> folders = new HashMap<String, Folder>();
+  private volatile boolean ready = false;
+  private final LinkedList<String> recent = new LinkedList<String>();
+  // guarded by recent
+  private boolean recentChanged = false;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  private StorageIndex(File file, File root) {
+    this.file = file;
+    this.recentFile = new File(file.getPath() + ".recent");
+    this.root = root;
+  }
+
+  /**
+   * @return <code>true</code>, if the index was loaded from the file, or built.
+   */
+  boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * @return <code>true</code>, if the folder is under the root of the index.
+   */
+  boolean covers(File folder) {
+    String path = folder.getAbsolutePath();
+    String top = root.getAbsolutePath();
+    return path.equals(top) || path.startsWith(top + File.separator);
+  }
+
+  /**
+   * Lists the folder from the index, if it didn't change since it was indexed.
+   * @param folder folder to list.
+   * @param lastModified current modification time of the folder.
+   * @param filter file-filtering rules.
+   * @param keys sort keys for the names.
+   * @return unsorted items, which pass the filter, or <code>null</code> if the index can't tell.
+   */
+  List<FileItem> list(File folder, long lastModified, FileItemFilter filter, SortKeys keys) {
+    String path = folder.getAbsolutePath();
+    Folder indexed = folders.get(path);
+    if (indexed == null || lastModified == 0 || indexed.lastModified != lastModified) {
+      return null;
+    }
+    List<FileItem> result = new ArrayList<FileItem>(indexed.names.length);
+    for (int i = 0; i < indexed.names.length; i++) {
+      FileItem item = indexed.item(path, i, keys);
+      if (filter.accept(item)) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Finds names, which contain the query, in the whole tree under the folder.
+   * Answers from the memory, so the result is as fresh as the index.
+   * @param under folder to search in.
+   * @param query text to look for, case is ignored.
+   * @param filter file-filtering rules.
+   * @param keys sort keys for the names.
+   * @return unsorted matches, or <code>null</code> if the calling thread was interrupted.
+   */
+  List<FileItem> search(File under, String query, FileItemFilter filter, SortKeys keys) {
+    String q = query.toLowerCase(Locale.ROOT);
+    String top = under.getAbsolutePath();
+    String prefix = top.endsWith(File.separator) ? top : top + File.separator;
+    Thread thread = Thread.currentThread();
+    List<FileItem> result = new ArrayList<FileItem>();
+    for (Map.Entry<String, Folder> entry : folders.entrySet()) {
+      if (thread.isInterrupted()) {
+        return null;
+      }
+      String path = entry.getKey();
+      if (!path.equals(top) && !path.startsWith(prefix)) {
+        continue;
+      }
+      Folder indexed = entry.getValue();
+      for (int i = 0; i < indexed.names.length; i++) {
+        if (indexed.names[i].toLowerCase(Locale.ROOT).contains(q)) {
+          FileItem item = indexed.item(path, i, keys);
+          if (filter.accept(item)) {
+            result.add(item);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remembers the folder as the most recently opened one.
+   * The file is written later, so walking through folders writes it once.
+   * Must be called from the UI thread.
+   */
+  void visited(File folder) {
+    String path = folder.getAbsolutePath();
+    synchronized (recent) {
+      if (!recent.isEmpty() && recent.getFirst().equals(path)) {
+        return;
+      }
+      recent.remove(path);
+      recent.addFirst(path);
+      while (recent.size() > MAX_RECENT) {
+        recent.removeLast();
+      }
+      recentChanged = true;
+    }
+    handler.removeCallbacks(flushRecent);
+    handler.postDelayed(flushRecent, RECENT_SAVE_DELAY_MS);
+  }
+
+  /**
+   * Writes the recent folders now, if they changed. Must be called from the UI thread.
+   */
+  void flushRecent() {
+    handler.removeCallbacks(flushRecent);
+    flushRecent.run();
+  }
+
+  private final Runnable flushRecent = new Runnable() {
+    public void run() {
+      synchronized (recent) {
+        if (!recentChanged) {
+          return;
+        }
+        recentChanged = false;
+      }
+      executor.execute(new Runnable() {
+        public void run() {
+          saveRecent();
+        }
+      });
+    }
+  };
+
+  /**
+   * @return recently opened folders, the latest first.
+   */
+  List<File> getRecentFolders() {
+    List<File> result = new ArrayList<File>();
+    synchronized (recent) {
+      for (String path : recent) {
+        result.add(new File(path));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Runs on the index thread.
+   */
+  private void load() {
+    loadRecent();
+    if (!file.exists()) {
+      return;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION 
+          || !in.readUTF().equals(root.getAbsolutePath())) {
+        return;
+      }
+      int folderCount = in.readInt();
+      Map<String, Folder> loaded = new HashMap<String, Folder>(folderCount * 4 / 3 + 1);
+      for (int f = 0; f < folderCount; f++) {
+        String path = in.readUTF();
+        long lastModified = in.readLong();
+        Folder folder = new Folder(lastModified, in.readInt());
+        for (int i = 0; i < folder.names.length; i++) {
+          folder.names[i] = in.readUTF();
+          folder.types[i] = in.readByte();
+          folder.sizes[i] = in.readLong();
+          folder.mtimes[i] = in.readLong();
+        }
+        loaded.put(path, folder);
+      }
+      folders = loaded;
+      ready = true;
+    } catch (IOException e) {
+      // damaged or written by another version: refresh builds it again
+    } finally {
+      close(in);
+    }
+  }
+
+  private void loadRecent() {
+    if (!recentFile.exists()) {
+      return;
+    }
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(recentFile)));
+      int count = in.readInt();
+      List<String> paths = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++) {
+        paths.add(in.readUTF());
+      }
+      synchronized (recent) {
+        // folders opened while loading are newer
+        for (String path : paths) {
+          if (recent.size() < MAX_RECENT && !recent.contains(path)) {
+            recent.addLast(path);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // start over
+    } finally {
+      close(in);
+    }
+  }
+
+  private void saveRecent() {
+    List<String> paths;
+    synchronized (recent) {
+      paths = new ArrayList<String>(recent);
+    }
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recentFile)));
+      out.writeInt(paths.size());
+      for (String path : paths) {
+        out.writeUTF(path);
+      }
+    } catch (IOException e) {
+      // remembered in the memory only
+    } finally {
+      close(out);
+    }
+  }
+
+  /**
+   * Walks the tree, re-lists only changed folders. Runs on the index thread.
+   */
+  private void refresh() {
+    Map<String, Folder> old = folders;
+    Map<String, Folder> fresh = new HashMap<String, Folder>(old.size() * 4 / 3 + 16);
+    LinkedList<String> queue = new LinkedList<String>();
+    queue.add(root.getAbsolutePath());
+    while (!queue.isEmpty()) {
+      if (shared != this) {
+        // disabled, or replaced
+        return;
+      }
+      String path = queue.removeFirst();
+      File dir = new File(path);
+      long lastModified = dir.lastModified();
+      Folder folder = old.get(path);
+      if (folder == null || lastModified == 0 || folder.lastModified != lastModified) {
+        folder = scan(dir, lastModified);
+      }
+      fresh.put(path, folder);
+      for (int i = 0; i < folder.names.length; i++) {
+        if (folder.types[i] == TYPE_FOLDER) {
+          queue.add(FileStat.path(path, folder.names[i]));
+        }
+      }
+    }
+    folders = fresh;
+    ready = true;
+    save(fresh);
+  }
+
+  private static Folder scan(File dir, long lastModified) {
+    String[] names = DirectoryListing.names(dir);
+    String parent = dir.getPath();
+    Folder folder = new Folder(lastModified, names.length);
+    for (int i = 0; i < names.length; i++) {
+      String path = FileStat.path(parent, names[i]);
+      folder.names[i] = names[i];
+      FileStat st = FileStat.lstat(path);
+      byte type = st != null && st.directory ? TYPE_FOLDER : TYPE_FILE;
+      if (st != null && st.link) {
+        // describe the target, like the listing does
+        st = FileStat.stat(path);
+        type = st != null && st.directory ? TYPE_FOLDER_LINK : TYPE_FILE;
+      }
+      if (st == null) {
+        // broken link or no access: a plain file, as in FileItem.stat
+        folder.types[i] = TYPE_FILE;
+        continue;
+      }
+      folder.types[i] = type;
+      folder.sizes[i] = st.size;
+      folder.mtimes[i] = st.lastModified;
+    }
+    return folder;
+  }
+
+  /**
+   * Writes a temporary file and renames it, so a crash never leaves half an index.
+   * Runs on the index thread.
+   */
+  private void save(Map<String, Folder> snapshot) {
+    File tmp = new File(file.getPath() + ".tmp");
+    DataOutputStream out = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(root.getAbsolutePath());
+      out.writeInt(snapshot.size());
+      for (Map.Entry<String, Folder> entry : snapshot.entrySet()) {
+        Folder folder = entry.getValue();
+        out.writeUTF(entry.getKey());
+        out.writeLong(folder.lastModified);
+        out.writeInt(folder.names.length);
+        for (int i = 0; i < folder.names.length; i++) {
+          out.writeUTF(folder.names[i]);
+          out.writeByte(folder.types[i]);
+          out.writeLong(folder.sizes[i]);
+          out.writeLong(folder.mtimes[i]);
+        }
+      }
+      out.close();
+      out = null;
+      if (!tmp.renameTo(file)) {
+        tmp.delete();
+      }
+    } catch (IOException e) {
+      // no space left: the index stays in the memory only
+      tmp.delete();
+    } finally {
+      close(out);
+    }
+  }
+
+  private static void close(Closeable c) {
+    if (c != null) {
+      try {
+        c.close();
+      } catch (IOException e) {
+        // nothing to do
+      }
+    }
+  }
+}
@@ -0,0 +1,364 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+/**
+ * Loads thumbnails of images and videos for the list rows.
+ * <br>
+ * Decoding happens on a small pool of background threads. Images are
+ * decoded with a sample size, so a large photo never gets into the memory
+ * at its full size. Thumbnails are kept in a byte-bounded LRU cache in 
+ * the memory, and in a bounded folder in the app cache dir, also trimmed 
+ * in the LRU order, so they are decoded once per file version.
+ * <br>
+ * Every {@link ImageView} waits for one thumbnail at a time: 
+ * binding it to another file cancels the previous load.
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class ThumbnailLoader {
+
+  private static final Set<String> IMAGES = new HashSet<String>(Arrays.asList(
+      "jpg", "jpeg", "png", "gif", "bmp", "webp"));
+  private static final Set<String> VIDEOS = new HashSet<String>(Arrays.asList(
+      "mp4", "3gp", "mkv", "webm"));
+
+  /**
+   * decodes at the same time: more only fight for the disk
+   */
+  private static final int DECODERS = 2;
+  private static final int DISK_CACHE_BYTES = 16 * 1024 * 1024;
+  /**
+   * the disk cache is trimmed after this many writes
+   */
+  private static final int TRIM_EVERY = 32;
+  private static final String DISK_CACHE_DIR = "select-files-thumbnails";
+  /**
+   * thumbnail key of items, which have no thumbnail
+   */
+  private static final String NO_THUMBNAIL = "";
+
+  private static final ExecutorService executor = Executors.newFixedThreadPool(DECODERS,
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-thumbnail"));
+
+  // 1/16 of the heap, shared by all dialogs
+  private static final LruCache<String, Bitmap> memory = new LruCache<String, Bitmap>(
+      (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16)) {
+    @Override
+    protected int sizeOf(String key, Bitmap value) {
+      return value.getByteCount();
+    }
+  };
+
+  private static int writes = 0;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final File diskCache;
+  private final int size;
+  // the load, which every view waits for
+  private final Map<ImageView, Load> loads = new HashMap<ImageView, Load>();
+
+  /**
+   * @param context for the cache dir.
+   * @param size thumbnail side, in pixels.
+   */
+  ThumbnailLoader(Context context, int size) {
+    this.diskCache = new File(context.getCacheDir(), DISK_CACHE_DIR);
+    this.size = size;
+  }
+
+  /**
+   * @return <code>true</code>, if the file is an image or a video.
+   */
+  static boolean hasThumbnail(FileItem item) {
+    if (item.isDirectory() || item.getType() == FileType.Up) {
+      return false;
+    }
+    String extension = extension(item.getName());
+    return IMAGES.contains(extension) || VIDEOS.contains(extension);
+  }
+
+  /**
+   * Shows the thumbnail of the item in the view, or hides the view,
+   * if the item has no thumbnail. The previous load for the view is cancelled.
+   * @param item item to show, <code>null</code> to just hide the view.
+   */
+  void load(ImageView view, FileItem item) {
+    Load previous = loads.remove(view);
+    if (previous != null) {
+      previous.future.cancel(true);
+    }
+    String key = item == null ? NO_THUMBNAIL : thumbnailKey(item);
+    if (key.length() == 0) {
+      view.setImageDrawable(null);
+      view.setVisibility(View.GONE);
+      return;
+    }
+    view.setVisibility(View.VISIBLE);
+    Bitmap cached = memory.get(key);
+    view.setImageBitmap(cached);
+    if (cached != null) {
+      return;
+    }
+    Load load = new Load(view, item, key);
+    loads.put(view, load);
+    load.future = executor.submit(load);
+  }
+
+  /**
+   * Cancels all loads.
+   */
+  void cancel() {
+    for (Load load : loads.values()) {
+      load.future.cancel(true);
+    }
+    loads.clear();
+  }
+
+  private class Load implements Runnable {
+    final ImageView view;
+    final FileItem item;
+    final String key;
+    Future<?> future;
+
+    Load(ImageView view, FileItem item, String key) {
+      this.view = view;
+      this.item = item;
+      this.key = key;
+    }
+
+    /**
+     * Runs on a decoder thread.
+     */
+    public void run() {
+      final Bitmap bitmap = thumbnail(item, key);
+      if (bitmap == null || Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      handler.post(new Runnable() {
+        public void run() {
+          // the view may show another file by now
+          if (loads.get(view) == Load.this) {
+            loads.remove(view);
+            view.setImageBitmap(bitmap);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Runs on a decoder thread.
+   */
+  private Bitmap thumbnail(FileItem item, String key) {
+    File cacheFile = new File(diskCache, digest(key) + ".jpg");
+    Bitmap bitmap = null;
+    if (cacheFile.exists()) {
+      bitmap = BitmapFactory.decodeFile(cacheFile.getPath());
+      if (bitmap != null) {
+        // the trim drops the least recently used thumbnails, not the oldest ones
+        cacheFile.setLastModified(System.currentTimeMillis());
+      }
+    }
+    if (bitmap == null) {
+      bitmap = decode(item);
+      if (bitmap == null) {
+        return null;
+      }
+      store(cacheFile, bitmap);
+    }
+    memory.put(key, bitmap);
+    return bitmap;
+  }
+
+  private Bitmap decode(FileItem item) {
+    String path = item.getFullPath();
+    if (VIDEOS.contains(extension(item.getName()))) {
+      Bitmap frame = ThumbnailUtils.createVideoThumbnail(path, MediaStore.Images.Thumbnails.MINI_KIND);
+      if (frame == null) {
+        return null;
+      }
+      return ThumbnailUtils.extractThumbnail(frame, size, size, ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+    }
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeFile(path, options);
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      // not an image, after all
+      return null;
+    }
+    // the largest power of two, which keeps both sides at least as large as the thumbnail
+    int sample = 1;
+    while (options.outWidth / (sample * 2) >= size && options.outHeight / (sample * 2) >= size) {
+      sample *= 2;
+    }
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sample;
+    options.inPreferredConfig = Bitmap.Config.RGB_565;
+    Bitmap sampled = BitmapFactory.decodeFile(path, options);
+    if (sampled == null) {
+      return null;
+    }
+    return ThumbnailUtils.extractThumbnail(sampled, size, size, ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+  }
+
+  private void store(File cacheFile, Bitmap bitmap) {
+    if (!diskCache.isDirectory() && !diskCache.mkdirs()) {
+      return;
+    }
+    OutputStream out = null;
+    try {
+      out = new FileOutputStream(cacheFile);
+      bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
+    } catch (IOException e) {
+      cacheFile.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          // nothing to do
+        }
+      }
+    }
+    boolean trim;
+    synchronized (ThumbnailLoader.class) {
+      trim = ++writes % TRIM_EVERY == 0;
+    }
+    if (trim) {
+      trimDiskCache();
+    }
+  }
+
+  /**
+   * Deletes the least recently used thumbnails, until the rest fit the limit.
+   * Hits touch the modification time of the file, so it tells the last use.
+   */
+  private void trimDiskCache() {
+    File[] files = diskCache.listFiles();
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    // read once: the comparator must not go to the disk
+    final Map<File, Long> modified = new HashMap<File, Long>(files.length * 4 / 3 + 1);
+    for (File f : files) {
+      total += f.length();
+      modified.put(f, f.lastModified());
+    }
+    if (total <= DISK_CACHE_BYTES) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File lhs, File rhs) {
+        long l = modified.get(lhs);
+        long r = modified.get(rhs);
+        return l < r ? -1 : (l == r ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < files.length && total > DISK_CACHE_BYTES; i++) {
+      total -= files[i].length();
+      files[i].delete();
+    }
+  }
+
+  /**
+   * @return file name for the cache key.
+   */
+  private static String digest(String key) {
+    try {
+      byte[] hash = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+      StringBuilder name = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return name.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @return cache key of the thumbnail, or {@link #NO_THUMBNAIL}. 
+   * Resolved once per item, so binding a recycled row allocates nothing.
+   */
+  private String thumbnailKey(FileItem item) {
+    String key = item.getThumbnailKey();
+    if (key == null) {
+      key = hasThumbnail(item) ? key(item) : NO_THUMBNAIL;
+      item.setThumbnailKey(key);
+    }
+    return key;
+  }
+
+  /**
+   * @return cache key, which changes, when the file does.
+   * Thumbnails of every loader have the same size, so items keep the key.
+   */
+  private String key(FileItem item) {
+    return item.getFullPath() + '\n' + item.getLastModified() + '\n' + item.getSize() + '\n' + size;
+  }
+
+  private static String extension(String name) {
+    int dot = name.lastIndexOf('.');
+    return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+  }
+}
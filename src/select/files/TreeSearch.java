@@ -0,0 +1,145 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches the whole tree under a folder for names, which contain the query.
+ * <br>
+ * Every folder is listed by a separate task, so the search goes
+ * as wide as the executor allows, and no wider. Matches are handed to the
+ * {@link Sink} folder by folder, as they are found.
+ * Symbolic links to folders are not followed, so there are no loops.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+final class TreeSearch {
+
+  /**
+   * Receives matches on the search threads.
+   */
+  interface Sink {
+    void onMatches(List<FileItem> matches);
+
+    void onFinished();
+  }
+
+  private final String query;
+  private final FileItemFilter filter;
+  private final boolean natural;
+  private final Executor executor;
+  private final Sink sink;
+  // folders, which are queued or being listed
+  private final AtomicInteger pending = new AtomicInteger();
+  private volatile boolean cancelled = false;
+
+  /**
+   * @param query text to look for, case is ignored.
+   * @param filter only matches, which pass it, are reported.
+   * @param natural sort order of the sort keys.
+   * @param executor runs the folder tasks, its size bounds the parallelism.
+   * @param sink receives the matches.
+   */
+  TreeSearch(String query, FileItemFilter filter, boolean natural, Executor executor, Sink sink) {
+    this.query = query.toLowerCase(Locale.ROOT);
+    this.filter = filter;
+    this.natural = natural;
+    this.executor = executor;
+    this.sink = sink;
+  }
+
+  void start(File root) {
+    submit(root);
+  }
+
+  /**
+   * Stops the search: queued folders are skipped, listed ones are abandoned.
+   */
+  void cancel() {
+    cancelled = true;
+  }
+
+  private void submit(final File folder) {
+    pending.incrementAndGet();
+    executor.execute(new Runnable() {
+      public void run() {
+        try {
+          if (!cancelled) {
+            search(folder);
+          }
+        } finally {
+          if (pending.decrementAndGet() == 0 && !cancelled) {
+            sink.onFinished();
+          }
+        }
+      }
+    });
+  }
+
+  private void search(File folder) {
+    String[] names = DirectoryListing.names(folder);
+    String parent = folder.getPath();
+    SortKeys keys = null;
+    List<FileItem> matches = null;
+    for (String name : names) {
+      if (cancelled) {
+        return;
+      }
+      boolean match = name.toLowerCase(Locale.ROOT).contains(query);
+      if (match) {
+        if (keys == null) {
+          keys = new SortKeys(natural);
+        }
+        FileItem item = FileItem.stat(folder, name, keys);
+        if (filter.accept(item)) {
+          if (matches == null) {
+            matches = new ArrayList<FileItem>();
+          }
+          matches.add(item);
+        }
+      }
+      if (isRealFolder(FileStat.path(parent, name))) {
+        submit(new File(folder, name));
+      }
+    }
+    if (matches != null && !cancelled) {
+      sink.onMatches(matches);
+    }
+  }
+
+  private static boolean isRealFolder(String path) {
+    FileStat st = FileStat.lstat(path);
+    return st != null && st.directory;
+  }
+}
@@ -0,0 +1,351 @@
+/**
+ * ##library.name##
+ * ##library.sentence##
+ * ##library.url##
+ *
+ * Copyright ##copyright## ##author##
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ * 
+ * @author      ##author##
+ * @modified    ##date##
+ * @version     ##library.prettyVersion## (##library.version##)
+ */
+package select.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Narrows the current listing down to the names, which match the query.
+ * <br>
+ * Queries are debounced, and run on a background thread against
+ * a {@link ListingIndex}, which is built once per listing.
+ * In the deep mode, the whole tree under the current folder is searched
+ * with a {@link TreeSearch}, and matches are delivered as they are found,
+ * or it is answered at once from the {@link StorageIndex}, if there is one.
+ * Only the latest query is delivered. 
+ * All methods must be called from the UI thread.
+ * 
+ * @author ostap.andrusiv
+ *
+ */
+class TypeAheadSearch {
+
+  /**
+   * Receives results on the UI thread.
+   */
+  interface Listener {
+    void onSearchResults(String query, List<FileItem> items);
+  }
+
+  /**
+   * wait for the user to stop typing
+   */
+  private static final long DEBOUNCE_MS = 150;
+
+  /**
+   * how often matches of the deep search are shown
+   */
+  private static final long DEEP_FLUSH_MS = 100;
+  /**
+   * folders, which are listed at the same time in the deep mode
+   */
+  private static final int DEEP_PARALLELISM = 3;
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-search"));
+  private static final ExecutorService walkers = Executors.newFixedThreadPool(DEEP_PARALLELISM, 
+      new DirectoryLoader.BackgroundThreadFactory("SelectFile-walker"));
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Listener listener;
+  private FileItemFilter filter = null;
+
+  private File folder = null;
+  private List<FileItem> listing = null;
+  private boolean complete = false;
+  // built lazily, re-built when the listing changes
+  private volatile ListingIndex index = null;
+  private String query = "";
+  private Future<?> pending = null;
+  private int generation = 0;
+
+  private boolean deep = false;
+  private boolean natural = false;
+  private TreeSearch treeSearch = null;
+  // matches of the deep search: sorted ones are shown, found ones are not yet
+  private List<FileItem> deepSorted = Collections.emptyList();
+  private List<FileItem> deepFound = new ArrayList<FileItem>();
+  private boolean deepFlushScheduled = false;
+
+  /**
+   * @param listener receives the results.
+   */
+  TypeAheadSearch(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @param filter deep search reports only the matches, which pass it.
+   */
+  void setFilter(FileItemFilter filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Sets the listing to search in, re-runs the active query on it.
+   * @param folder listed folder, the deep search starts from it.
+   * @param listing listing of the folder.
+   * @param complete <code>false</code>, if more chunks are coming: the listing is not indexed then.
+   */
+  void setListing(File folder, List<FileItem> listing, boolean complete) {
+    boolean sameFolder = folder.equals(this.folder);
+    this.folder = folder;
+    this.listing = listing;
+    this.complete = complete;
+    if (isActive() && !(deep && sameFolder)) {
+      schedule(0);
+    }
+  }
+
+  /**
+   * @param deep <code>true</code> to search the whole tree under the folder.
+   */
+  void setDeep(boolean deep) {
+    if (deep == this.deep) {
+      return;
+    }
+    this.deep = deep;
+    if (isActive()) {
+      schedule(0);
+    }
+  }
+
+  /**
+   * @param natural sort order of the deep search matches, see {@link SortKeys}.
+   */
+  void setNaturalSort(boolean natural) {
+    this.natural = natural;
+  }
+
+  /**
+   * @param query new query, the results are delivered after a short delay.
+   */
+  void setQuery(String query) {
+    if (query.equals(this.query)) {
+      return;
+    }
+    this.query = query;
+    if (isActive()) {
+      schedule(DEBOUNCE_MS);
+    } else {
+      // back to the whole listing, nothing to search
+      cancel();
+      if (listing != null) {
+        listener.onSearchResults(query, listing);
+      }
+    }
+  }
+
+  String getQuery() {
+    return query;
+  }
+
+  /**
+   * @return <code>true</code>, if the listing is narrowed down.
+   */
+  boolean isActive() {
+    return query.length() > 0;
+  }
+
+  void cancel() {
+    generation++;
+    handler.removeCallbacks(run);
+    handler.removeCallbacks(flushDeep);
+    deepFlushScheduled = false;
+    if (pending != null) {
+      pending.cancel(true);
+      pending = null;
+    }
+    if (treeSearch != null) {
+      treeSearch.cancel();
+      treeSearch = null;
+    }
+  }
+
+  private void schedule(long delay) {
+    cancel();
+    handler.postDelayed(run, delay);
+  }
+
+  private final Runnable run = new Runnable() {
+    public void run() {
+      if (listing == null) {
+        return;
+      }
+      if (deep) {
+        startDeep();
+        return;
+      }
+      final List<FileItem> items = listing;
+      final boolean indexed = complete;
+      final String q = query;
+      final int token = generation;
+      pending = executor.submit(new Runnable() {
+        public void run() {
+          if (items instanceof PagedListing) {
+            // an index would hold every row; scan the names instead
+            deliver(((PagedListing) items).search(q), q, token);
+            return;
+          }
+          if (!indexed) {
+            // the index would be thrown away with the next chunk
+            deliver(ListingIndex.scan(items, q), q, token);
+            return;
+          }
+          ListingIndex current = index;
+          if (current == null || !current.isFor(items)) {
+            current = ListingIndex.build(items);
+            if (current == null) {
+              // cancelled
+              return;
+            }
+            index = current;
+          }
+          deliver(current.query(q), q, token);
+        }
+      });
+    }
+  };
+
+  /**
+   * Runs on the search thread.
+   */
+  private void deliver(final List<FileItem> result, final String q, final int token) {
+    if (result == null) {
+      // cancelled
+      return;
+    }
+    handler.post(new Runnable() {
+      public void run() {
+        if (token == generation) {
+          pending = null;
+          listener.onSearchResults(q, result);
+        }
+      }
+    });
+  }
+
+  private void startDeep() {
+    StorageIndex storage = StorageIndex.shared();
+    if (storage != null && storage.isReady() && storage.covers(folder)) {
+      searchIndex(storage);
+      return;
+    }
+    final int token = generation;
+    // a new list for every search: late matches of the cancelled ones go nowhere
+    final List<FileItem> found = new ArrayList<FileItem>();
+    deepFound = found;
+    deepSorted = Collections.emptyList();
+    listener.onSearchResults(query, deepSorted);
+    treeSearch = new TreeSearch(query, filter, natural, walkers, new TreeSearch.Sink() {
+      @Override
+      public void onMatches(List<FileItem> matches) {
+        synchronized (found) {
+          found.addAll(matches);
+        }
+        handler.post(new Runnable() {
+          public void run() {
+            if (token == generation && !deepFlushScheduled) {
+              // show matches in batches, not a re-bind per folder
+              deepFlushScheduled = true;
+              handler.postDelayed(flushDeep, DEEP_FLUSH_MS);
+            }
+          }
+        });
+      }
+
+      @Override
+      public void onFinished() {
+        handler.post(new Runnable() {
+          public void run() {
+            if (token == generation) {
+              handler.removeCallbacks(flushDeep);
+              flushDeep.run();
+            }
+          }
+        });
+      }
+    });
+    treeSearch.start(folder);
+  }
+
+  /**
+   * Answers the deep search from the memory, without walking the tree.
+   */
+  private void searchIndex(final StorageIndex storage) {
+    final File under = folder;
+    final String q = query;
+    final int token = generation;
+    final boolean naturalSort = natural;
+    final FileItemFilter itemFilter = filter;
+    pending = executor.submit(new Runnable() {
+      public void run() {
+        final List<FileItem> result = storage.search(under, q, itemFilter, new SortKeys(naturalSort));
+        if (result == null) {
+          // cancelled
+          return;
+        }
+        Collections.sort(result, DirectoryListing.sorter);
+        handler.post(new Runnable() {
+          public void run() {
+            if (token == generation) {
+              pending = null;
+              deepSorted = result;
+              listener.onSearchResults(q, result);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private final Runnable flushDeep = new Runnable() {
+    public void run() {
+      deepFlushScheduled = false;
+      List<FileItem> found;
+      synchronized (deepFound) {
+        found = new ArrayList<FileItem>(deepFound);
+        deepFound.clear();
+      }
+      if (found.isEmpty()) {
+        return;
+      }
+      Collections.sort(found, DirectoryListing.sorter);
+      deepSorted = DirectoryListing.merge(deepSorted, found);
+      listener.onSearchResults(query, deepSorted);
+    }
+  };
+}